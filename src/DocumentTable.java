@@ -0,0 +1,135 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * DocumentTable class
+ * 	assign each path or url a dense int id so the index stores every location
+ * 	string once, and keep the total word count of each location
+ * @author Hao Shen
+ *
+ */
+public class DocumentTable {
+
+	//id -> path
+	private final ArrayList<String> paths;
+	//path -> id
+	private final HashMap<String, Integer> ids;
+	//id -> total word
+	private int[] counts;
+
+	/**
+	 * Initializes an empty document table
+	 */
+	public DocumentTable() {
+		this.paths = new ArrayList<String>();
+		this.ids = new HashMap<String, Integer>();
+		this.counts = new int[16];
+	}
+
+	/**
+	 * Return the id of the given location, assigning the next id if the location is new
+	 * @param path path or url of the document
+	 * @return id of the document
+	 */
+	public int add(String path) {
+		Integer id = ids.get(path);
+		if(id != null) {
+			return id;
+		}
+		int next = paths.size();
+		paths.add(path);
+		ids.put(path, next);
+		if(next >= counts.length) {
+			counts = Arrays.copyOf(counts, counts.length + (counts.length >> 1));
+		}
+		return next;
+	}
+
+	/**
+	 * Return the id of the given location
+	 * @param path path or url of the document
+	 * @return id of the document, -1 if the location is not in the table
+	 */
+	public int find(String path) {
+		Integer id = ids.get(path);
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * Return the location of the given id
+	 * @param id id of the document
+	 * @return path or url of the document
+	 */
+	public String getPath(int id) {
+		return paths.get(id);
+	}
+
+	/**
+	 * Return the total word of the given id
+	 * @param id id of the document
+	 * @return total word in the document
+	 */
+	public int getCount(int id) {
+		return counts[id];
+	}
+
+	/**
+	 * Set the total word of the given id
+	 * @param id id of the document
+	 * @param count total word in the document
+	 */
+	public void setCount(int id, int count) {
+		counts[id] = count;
+	}
+
+	/**
+	 * Increase the total word of the given id by one
+	 * @param id id of the document
+	 */
+	public void increment(int id) {
+		counts[id]++;
+	}
+
+	/**
+	 * Return the number of documents in the table
+	 * @return number of documents
+	 */
+	public int size() {
+		return paths.size();
+	}
+
+	/**
+	 * Return the rank of every document when sorted by its location, used to
+	 * write the documents of a posting list in path order
+	 * @return array where rank[id] is the sorted position of the document
+	 */
+	public int[] getRanks() {
+		Integer[] order = new Integer[paths.size()];
+		for(int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> paths.get(a).compareTo(paths.get(b)));
+
+		int[] rank = new int[order.length];
+		for(int i = 0; i < order.length; i++) {
+			rank[order[i]] = i;
+		}
+		return rank;
+	}
+
+	/**
+	 * Return the location to total word map of every document with at least one word
+	 * @return TreeMap<path, total word>
+	 */
+	public TreeMap<String, Integer> toLocations() {
+		TreeMap<String, Integer> locations = new TreeMap<String, Integer>();
+		for(int i = 0; i < paths.size(); i++) {
+			if(counts[i] > 0) {
+				locations.put(paths.get(i), counts[i]);
+			}
+		}
+		return locations;
+	}
+}
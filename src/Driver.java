@@ -4,6 +4,8 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
 
 /**
  * Driver class 
@@ -21,35 +23,85 @@ public class Driver {
 	public static void main(String[] args) {
 		ArgumentMap map = new ArgumentMap(args);
 		int threads = 1;
+		WorkQueue.Mode mode = WorkQueue.Mode.SHARED;
 		boolean threadFlag = map.hasFlag("-threads");
 		boolean urlFlag = map.hasFlag("-url");
 		boolean portFlag = map.hasFlag("-port");
+		//-positions false keeps only the count of each word in each document
+		boolean positions = !"false".equalsIgnoreCase(map.getString("-positions", "true"));
 
 		WorkQueue worker = null;
 		InvertedIndex index = null;
-		ThreadSafeInvertedIndex threadSafe = null;
-		QueryParserInterface queryParser;
+		StripedInvertedIndex striped = null;
+		SegmentedInvertedIndex segmented = null;
+		InvertedIndexInterface served = null;
+		QueryParserInterface queryParser = null;
+		FrozenInvertedIndex frozen = null;
+		//files the index was built from, saved with it
+		IndexManifest manifest = null;
 		WebCrawler crawler = null;
+		//crawl running while the index is served, null if none
+		Thread crawl = null;
 		SearchEngin engin = null;
+		//false once the build failed, the saved index is left as is
+		boolean save = map.hasFlag("-save");
+
+		//-load only goes with -path, a crawl always builds a new index
+		if(map.hasFlag("-load") && urlFlag) {
+			System.err.println("Flags -load and -url cannot be used together, crawl into a new index with -url and -save instead");
+			return;
+		}
 
 		if(urlFlag || portFlag) {
 			threadFlag = true;
 		}
 
 		if (!threadFlag) {
-			index = new InvertedIndex();
-			queryParser = new QueryParser(index);
+			index = new InvertedIndex(positions);
 		} else {
-			threads = Integer.parseInt(map.getString("-threads", "5"));
-			worker = new WorkQueue(threads);
-			threadSafe = new ThreadSafeInvertedIndex();
-			index = threadSafe;
-			queryParser = new MultiThreadQueryParser(worker, threadSafe);
+			//-virtual downloads pages on virtual threads, the workers only stem and index them
+			boolean virtual = map.hasFlag("-virtual");
+			String defaultThreads = virtual ? String.valueOf(Runtime.getRuntime().availableProcessors()) : "5";
+			threads = Integer.parseInt(map.getString("-threads", defaultThreads));
+			//-queue shared (default), stealing or fork_join picks how the work is handed to the threads
+			String modeStr = map.getString("-queue", "shared");
+			//-capacity bounds the waiting work, -overflow block or caller_runs when full
+			String overflowStr = map.getString("-overflow", "block");
+			int capacity;
+			WorkQueue.Overflow overflow;
+			try {
+				mode = WorkQueue.Mode.valueOf(modeStr.toUpperCase());
+				overflow = WorkQueue.Overflow.valueOf(overflowStr.toUpperCase());
+				capacity = Integer.parseInt(map.getString("-capacity", "0"));
+			} catch (NumberFormatException numEx) {
+				System.err.println("Illegal capacity: " + map.getString("-capacity"));
+				return;
+			} catch (IllegalArgumentException e) {
+				System.err.println("Illegal queue mode or overflow: " + modeStr + " " + overflowStr + " please check your argument");
+				return;
+			}
+			worker = new WorkQueue(threads, mode, virtual, capacity, overflow);
+			//the workers merge their pages or files into the stripes in parallel
+			striped = new StripedInvertedIndex(positions, StripedInvertedIndex.DEFAULT_STRIPES);
 		}
 
-		//-url
-		if(urlFlag) {
-			crawler = new WebCrawler(worker, threadSafe);
+		//-load, with -path the loaded index is updated instead
+		if(map.hasFlag("-load") && !map.hasFlag("-path")) {
+			Path loadPath = map.getPath("-load");
+			if(loadPath != null && Files.exists(loadPath)) {
+				try {
+					frozen = IndexFile.load(loadPath);
+				} catch (IOException e) {
+					System.err.println("Unable to load the index file: " + loadPath.toString() + "\n\tplease check your argument");
+					//never replace a saved index with an empty one
+					save = false;
+				}
+			} else {
+				System.err.println("Invalid value for load flag: " + loadPath + "\n\tplease check your argument");
+				save = false;
+			}
+		} else if(urlFlag) {
+			//-url
 			String seedStr = map.getString("-url");
 			URL seed;
 			int limit;
@@ -64,21 +116,91 @@ public class Driver {
 				return;
 			}
 
-			crawler.craw(seed, limit);
+			if(!portFlag) {
+				crawler = new WebCrawler(worker, striped);
+				crawler.craw(seed, limit);
+			} else {
+				//serve right away, searches run on the published segments while the crawl adds pages
+				segmented = new SegmentedInvertedIndex(positions, SegmentedInvertedIndex.DEFAULT_MERGE_FACTOR);
+				crawler = new WebCrawler(worker, segmented);
+				WebCrawler liveCrawler = crawler;
+				crawl = new Thread(() -> liveCrawler.craw(seed, limit), "crawler");
+				crawl.setDaemon(true);
+				crawl.start();
+			}
 
 		} else if(map.hasFlag("-path")) {
 			Path file = map.getPath("-path");
+			//-maxdepth limits the levels read, -include and -exclude take globs of the files or directories
+			PathFilter filter;
+			try {
+				int maxDepth = map.hasValue("-maxdepth") ? Integer.parseInt(map.getString("-maxdepth")) : Integer.MAX_VALUE;
+				filter = new PathFilter(maxDepth, map.getString("-include"), map.getString("-exclude"));
+			} catch (NumberFormatException numEx) {
+				System.err.println("Illegal max depth: " + map.getString("-maxdepth"));
+				return;
+			} catch (IllegalArgumentException e) {
+				System.err.println("Illegal glob: " + e.getMessage() + " please check your argument");
+				return;
+			}
 
 			if(file != null && Files.exists(file)) {
 
 				try {
-					if(!threadFlag) {
-						InvertedMapBuilder.buildMap(file, index);
+					if(!map.hasFlag("-load") && !map.hasFlag("-save")) {
+						if(!threadFlag) {
+							InvertedMapBuilder.buildMap(file, index, filter);
+						} else {
+							MultiThreadInvertedMapBuilder.buildMap(file, striped, worker, filter);
+						}
+					} else if(!map.hasFlag("-load")) {
+						//-save keeps the manifest of the files read, hashed while they are read
+						IndexManifest read = new IndexManifest();
+						if(!threadFlag) {
+							InvertedMapBuilder.buildMap(InvertedMapBuilder.listFiles(file, filter), index, read);
+						} else {
+							MultiThreadInvertedMapBuilder.buildMap(file, striped, worker, filter, read);
+						}
+						manifest = read;
 					} else {
-						MultiThreadInvertedMapBuilder.buildMap(file, threadSafe, worker);
+						//-load with -path re-indexes only the files changed since the loaded index was saved
+						FrozenInvertedIndex previous = null;
+						IndexManifest old = null;
+						Path loadPath = map.getPath("-load");
+						if(loadPath != null && Files.exists(loadPath)) {
+							try {
+								previous = IndexFile.load(loadPath);
+								old = IndexFile.loadManifest(loadPath);
+							} catch (IOException e) {
+								System.err.println("Unable to load the index file: " + loadPath.toString() + ", indexing every file");
+							}
+						}
+						if(old == null || previous.hasPositions() != positions) {
+							previous = null;
+							old = new IndexManifest();
+						}
+						//served as loaded if the files cannot be listed
+						frozen = previous;
+
+						ArrayList<Path> changed = new ArrayList<Path>();
+						HashSet<String> removed = new HashSet<String>();
+						IndexManifest current = old.update(InvertedMapBuilder.listFiles(file, filter), changed, removed);
+						//a changed file that cannot be read stays out of the manifest, so the next build tries it again
+						if(!threadFlag) {
+							InvertedMapBuilder.buildMap(changed, index, current);
+						} else {
+							MultiThreadInvertedMapBuilder.buildMap(changed, striped, worker, current);
+						}
+						if(previous != null) {
+							FrozenInvertedIndex fresh = striped != null ? striped.freeze() : index.freeze();
+							frozen = previous.update(removed, fresh);
+						}
+						manifest = current;
 					}
 				} catch (IOException e) {
 					System.err.println("Unbale to read the path or stem the file: " + file.toString() + "\n\tplease check your argument");
+					//never replace a saved index with a partial one
+					save = false;
 				}
 			} else {
 				if(file == null) {
@@ -86,16 +208,75 @@ public class Driver {
 				} else {
 					System.err.println("Invalid value for path flag: " + file.toString() + "\n\tplease check your argument");
 				}
+				save = false;
 			}
 		} else {
 			System.err.println("Missing flag for -path");
+			save = false;
+		}
+
+		if(segmented != null) {
+			//still growing, only the server sees the pages while they are crawled
+			served = segmented;
+		} else {
+			//the index is read only from here on, search the frozen copy without locking
+			if(frozen == null) {
+				frozen = striped != null ? striped.freeze() : index.freeze();
+			}
+			served = frozen;
+		}
+		index = null;
+		striped = null;
+
+		//-port
+		if(portFlag) {
+			int port;
+			try {
+				port = Integer.parseInt(map.getString("-port", "8080"));
+			} catch (NumberFormatException numEx) {
+				System.err.println("Illegal port number: " + map.getString("-port"));
+				return;
+			}
+			engin = new SearchEngin(served, port, worker);
+			try {
+				engin.start();
+			} catch (Exception e) {
+				System.err.println("Exception happened while search!!!");
+				engin = null;
+			}
+		}
+
+		//the file outputs below cover the whole crawl
+		if(crawl != null) {
+			try {
+				crawl.join();
+			} catch (InterruptedException e) {
+				System.err.println("Interrupted while waiting for the crawl");
+				return;
+			}
+		}
+
+		//-save
+		if(save) {
+			Path savePath = map.getPath("-save", Paths.get("index.bin"));
+			try {
+				IndexFile.write(segmented != null ? segmented.freeze() : frozen, manifest, savePath);
+			} catch (IOException e) {
+				System.err.println("Unable to save the index file: " + savePath.toString() + "\n\tplease check your argument.");
+			}
+		}
+
+		if (!threadFlag) {
+			queryParser = new QueryParser(served);
+		} else {
+			queryParser = new MultiThreadQueryParser(worker, served);
 		}
 
 		//-index
 		if(map.hasFlag("-index")) {
 			Path indexPath = map.getPath("-index", Paths.get("index.json"));
 			try {
-				index.toIndexJSON(indexPath);
+				served.toIndexJSON(indexPath);
 			} catch (IOException e) {
 				System.err.println("Unable to print out to file: "  + indexPath.toString() + "\n\tplease check your argument.");
 			}
@@ -105,7 +286,7 @@ public class Driver {
 		if(map.hasFlag("-locations")) {
 			Path locationsPath = map.getPath("-locations", Paths.get("locations.json"));
 			try {
-				index.toLocationsJSON(locationsPath);
+				served.toLocationsJSON(locationsPath);
 			} catch(IOException e) {
 				System.err.println("Unable to print out to file: " + locationsPath.toString() + "\n\tplease check your argument.");
 			}
@@ -113,18 +294,12 @@ public class Driver {
 
 		//-port
 		if(portFlag) {
-			int port;
-			try {
-				port = Integer.parseInt(map.getString("-port", "8080"));
-			} catch (NumberFormatException numEx) {
-				System.err.println("Illegal port number: " + map.getString("-port"));
-				return;
-			}
-			engin = new SearchEngin(threadSafe, port, worker);
-			try {
-				engin.startServlet();
-			} catch (Exception e) {
-				System.err.println("Exception happened while search!!!");
+			if(engin != null) {
+				try {
+					engin.join();
+				} catch (InterruptedException e) {
+					System.err.println("Exception happened while search!!!");
+				}
 			}
 
 		} else if(map.hasFlag("-search")) {
@@ -153,6 +328,11 @@ public class Driver {
 			}
 		}
 
+		//-stemstats prints how well the shared stem cache did
+		if(map.hasFlag("-stemstats")) {
+			System.out.println(StemCache.getShared());
+		}
+
 		if(worker != null) {
 			worker.shutdown();
 		}
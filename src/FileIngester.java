@@ -0,0 +1,345 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * FileIngester class
+ * 	reads text files into one inverted index in a single pass. The bytes are
+ * 	decoded in large chunks, every line is tokenized in place in the chunk,
+ * 	and each word is looked up in a table of the words seen so far that gives
+ * 	the ordinal of its stem in the index, so a word is only copied, stemmed
+ * 	and added to the term dictionary the first time a document holding it
+ * 	is read in full. The positions of a document are appended to one list
+ * 	per stem and put into the postings once the document ends.
+ *
+ * 	The bytes are hashed on the way, so the manifest of a saved index needs
+ * 	no second read of the files.
+ *
+ * 	Gives the same index as reading the lines with a {@link java.io.BufferedReader}
+ * 	and putting the stemmed words of {@link TextParser#parse(String)}.
+ * 	Not thread safe, use one ingester per index.
+ * @author Hao Shen
+ *
+ * @see InvertedMapBuilder#stemFile(Path, InvertedIndex)
+ */
+public class FileIngester {
+
+	//bytes read and chars decoded at a time
+	private static final int CHUNK = 1 << 16;
+
+	private final InvertedIndex index;
+	private final StemCache stemmer;
+	private final CharsetDecoder decoder;
+	private final TextParser.WordConsumer addWord;
+	//hash of the bytes of the current document
+	private final CRC32C crc;
+	//read and decode buffers, reused for every file
+	private ByteBuffer bytes;
+	private CharBuffer chars;
+
+	//open addressing table, word -> stem
+	private char[][] words;
+	private int[] hashes;
+	private Stem[] stems;
+	private int size;
+	//stem -> ordinal and positions, shared by the words with the same stem
+	private final HashMap<String, Stem> byStem;
+
+	//stems with positions in the current document
+	private Stem[] touched;
+	private int count;
+	//ordinals and positions of the touched stems, handed to the index
+	private int[] ordinals;
+	private PositionList[] lists;
+	//number of words in the current document
+	private int total;
+
+	/**
+	 * Initializes an ingester adding files to the given index
+	 * @param index inverted index to add the files to
+	 */
+	public FileIngester(InvertedIndex index) {
+		this.index = index;
+		this.stemmer = StemCache.getShared();
+		this.decoder = StandardCharsets.UTF_8.newDecoder();
+		this.addWord = this::add;
+		this.crc = new CRC32C();
+		this.bytes = ByteBuffer.allocate(0);
+		this.chars = CharBuffer.allocate(0);
+		this.words = new char[1024][];
+		this.hashes = new int[1024];
+		this.stems = new Stem[1024];
+		this.size = 0;
+		this.byStem = new HashMap<String, Stem>();
+		this.touched = new Stem[256];
+		this.count = 0;
+		this.ordinals = new int[256];
+		this.lists = new PositionList[256];
+		this.total = 0;
+	}
+
+	/**
+	 * Read the file and put its stemmed words into the index, the first one at position 1
+	 * @param file text file encoded in UTF-8
+	 * @throws IOException if unable to read or decode the file
+	 */
+	public void add(Path file) throws IOException {
+		boolean read = false;
+		try {
+			read(file);
+			read = true;
+		} finally {
+			finish(file.toString(), read);
+		}
+	}
+
+	/**
+	 * Put the stemmed words of the bytes into the index as one document, the
+	 * first one at position 1
+	 * @param location the path of the document
+	 * @param part text encoded in UTF-8, starting at a line, for example part
+	 * 	of a memory mapped file
+	 * @throws IOException if unable to decode the bytes
+	 */
+	public void add(String location, ByteBuffer part) throws IOException {
+		boolean read = false;
+		try {
+			chars.clear();
+			decoder.reset();
+			crc.reset();
+			crc.update(part.duplicate());
+			decode(part, true);
+			read = true;
+		} finally {
+			finish(location, read);
+		}
+	}
+
+	/**
+	 * Return the hash of the last document added
+	 * @return CRC-32C of its bytes, the same as {@link IndexManifest#hash(Path)}
+	 * 	for a whole file
+	 */
+	public long getHash() {
+		return crc.getValue();
+	}
+
+	/**
+	 * Put the current document into the index, or drop it if it could not be read
+	 * @param location the path of the document
+	 * @param read false to drop the words of the document
+	 */
+	private void finish(String location, boolean read) {
+		if(read) {
+			if(ordinals.length < count) {
+				ordinals = new int[touched.length];
+				lists = new PositionList[touched.length];
+			}
+			for(int i = 0; i < count; i++) {
+				//a stem only enters the index once a document holding it is read
+				if(touched[i].ordinal < 0) {
+					touched[i].ordinal = index.intern(touched[i].stem);
+				}
+				ordinals[i] = touched[i].ordinal;
+				lists[i] = touched[i].positions;
+			}
+			index.putDocument(location, ordinals, lists, count, total);
+			Arrays.fill(lists, 0, count, null);
+		}
+		for(int i = 0; i < count; i++) {
+			touched[i].positions = null;
+		}
+		count = 0;
+		total = 0;
+	}
+
+	/**
+	 * Read the words of the file into the current document
+	 * @param file text file encoded in UTF-8
+	 * @throws IOException if unable to read or decode the file
+	 */
+	private void read(Path file) throws IOException {
+		int capacity = (int) Math.min(Math.max(Files.size(file), 16), CHUNK);
+		if(bytes.capacity() < capacity) {
+			bytes = ByteBuffer.allocate(capacity);
+		}
+		if(chars.capacity() < capacity) {
+			chars = CharBuffer.allocate(capacity);
+		}
+		bytes.clear();
+		chars.clear();
+		decoder.reset();
+		crc.reset();
+		try(InputStream in = Files.newInputStream(file)) {
+			int read;
+			while((read = in.read(bytes.array(), bytes.position(), bytes.remaining())) >= 0) {
+				crc.update(bytes.array(), bytes.position(), read);
+				bytes.position(bytes.position() + read);
+				bytes.flip();
+				decode(bytes, false);
+				//keeps a char cut at the end of the read
+				bytes.compact();
+			}
+			bytes.flip();
+			decode(bytes, true);
+		}
+	}
+
+	/**
+	 * Decode the bytes and tokenize every finished line, the unfinished line
+	 * stays in the chars until more bytes are decoded
+	 * @param input bytes to decode
+	 * @param end true if no bytes follow, the last line is tokenized too
+	 * @throws IOException if unable to decode the bytes
+	 */
+	private void decode(ByteBuffer input, boolean end) throws IOException {
+		if(chars.capacity() < 16) {
+			chars = CharBuffer.allocate(CHUNK);
+		}
+		while(true) {
+			CoderResult result = decoder.decode(input, chars, end);
+			if(result.isError()) {
+				result.throwException();
+			}
+			if(end && result.isUnderflow()) {
+				result = decoder.flush(chars);
+			}
+			//underflow once all the input is decoded
+			boolean decoded = result.isUnderflow();
+
+			//the line terminators of readLine, an extra empty line adds no words
+			char[] array = chars.array();
+			int length = chars.position();
+			int line = 0;
+			for(int i = 0; i < length; i++) {
+				if(array[i] == '\n' || array[i] == '\r') {
+					TextParser.tokenize(array, line, i, addWord);
+					line = i + 1;
+				}
+			}
+			if(decoded && end) {
+				TextParser.tokenize(array, line, length, addWord);
+				chars.clear();
+				return;
+			}
+
+			//keep the unfinished line, growing the chunk if the line fills it
+			if(line == 0 && length == array.length) {
+				chars = CharBuffer.allocate(array.length * 2);
+				chars.put(array, 0, length);
+			} else {
+				System.arraycopy(array, line, array, 0, length - line);
+				chars.position(length - line);
+			}
+			if(decoded) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Add the next position of the word to the current document
+	 * @param word buffer starting with the cleaned word, only read during the call
+	 * @param length number of chars in the word
+	 */
+	private void add(char[] word, int length) {
+		int hash = hash(word, length);
+		int mask = words.length - 1;
+		int slot = hash & mask;
+		char[] key;
+		while((key = words[slot]) != null) {
+			if(hashes[slot] == hash && Arrays.equals(key, 0, key.length, word, 0, length)) {
+				addPosition(stems[slot]);
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		key = Arrays.copyOf(word, length);
+		Stem stem = byStem.computeIfAbsent(stemmer.stem(new String(key)), Stem::new);
+		words[slot] = key;
+		hashes[slot] = hash;
+		stems[slot] = stem;
+		if(++size * 2 > words.length) {
+			grow();
+		}
+		addPosition(stem);
+	}
+
+	/**
+	 * Add the next position to the stem
+	 * @param stem stem of the word
+	 */
+	private void addPosition(Stem stem) {
+		if(stem.positions == null) {
+			stem.positions = new PositionList();
+			if(count == touched.length) {
+				touched = Arrays.copyOf(touched, count * 2);
+			}
+			touched[count++] = stem;
+		}
+		stem.positions.add(++total);
+	}
+
+	/**
+	 * Double the word table
+	 */
+	private void grow() {
+		char[][] oldWords = words;
+		int[] oldHashes = hashes;
+		Stem[] oldStems = stems;
+		words = new char[oldWords.length * 2][];
+		hashes = new int[words.length];
+		stems = new Stem[words.length];
+		int mask = words.length - 1;
+		for(int i = 0; i < oldWords.length; i++) {
+			if(oldWords[i] != null) {
+				int slot = oldHashes[i] & mask;
+				while(words[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				words[slot] = oldWords[i];
+				hashes[slot] = oldHashes[i];
+				stems[slot] = oldStems[i];
+			}
+		}
+	}
+
+	/**
+	 * Hash of the chars, spread so the low bits pick the slot
+	 */
+	private static int hash(char[] word, int length) {
+		int hash = 0;
+		for(int i = 0; i < length; i++) {
+			hash = 31 * hash + word[i];
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Stem class
+	 * 	ordinal of a stem in the index and its positions in the current document
+	 */
+	private static class Stem {
+
+		private final String stem;
+		//-1 until the stem is put into the index
+		private int ordinal;
+		//null until the stem is found in the current document
+		private PositionList positions;
+
+		public Stem(String stem) {
+			this.stem = stem;
+			this.ordinal = -1;
+		}
+	}
+}
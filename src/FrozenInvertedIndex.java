@@ -0,0 +1,671 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Immutable, read optimized copy of an {@link InvertedIndex}, created by
+ * {@link InvertedIndex#freeze()} once the index is built. Words are kept in
+ * one sorted array and the postings of all words are packed into flat int
+ * arrays, so a search is a binary search plus a linear scan and needs no lock.
+ *
+ * Documents are renumbered in path order while freezing, so the postings of
+ * every word are already sorted by path.
+ *
+ * The positions of every posting stay gap encoded as in {@link PositionList}
+ * and the count of every posting is stored next to them, so ranking never
+ * decodes positions. An index frozen from an index without positions keeps
+ * the counts only.
+ *
+ * The packed arrays are read through {@link IntBuffer} and {@link ByteBuffer}
+ * views, backed either by heap arrays after freezing or by a memory mapped
+ * index file after {@link IndexFile#load(Path)}.
+ * @author Hao Shen
+ *
+ */
+public class FrozenInvertedIndex implements InvertedIndexInterface {
+
+	//sorted words
+	private final String[] terms;
+	//word i owns the postings from termOffsets[i] to termOffsets[i+1]
+	private final IntBuffer termOffsets;
+	//posting -> document id
+	private final IntBuffer documentIds;
+	//posting -> number of positions
+	private final IntBuffer counts;
+	//posting j owns the encoded positions from byte positionOffsets[j] to positionOffsets[j+1]
+	//both null if the index keeps counts only
+	private final IntBuffer positionOffsets;
+	private final ByteBuffer positions;
+	//document id <-> path, total word, ids in path order
+	private final DocumentTable documents;
+
+	/**
+	 * Pack the term dictionary, postings and documents of an index
+	 * @param dictionary the term dictionary of the index
+	 * @param postings the postings of every term ordinal
+	 * @param table the document table of the index
+	 * @param withPositions false if the postings keep counts only
+	 */
+	FrozenInvertedIndex(TermTrie dictionary, List<PostingList> postings, DocumentTable table, boolean withPositions) {
+		this(List.of(dictionary), List.of(postings), table, withPositions);
+	}
+
+	/**
+	 * Pack the term dictionaries and postings of an index split into parts
+	 * holding different words, which all share one document table
+	 * @param dictionaries the term dictionary of every part
+	 * @param postings the postings of every term ordinal of every part
+	 * @param table the document table shared by the parts
+	 * @param withPositions false if the postings keep counts only
+	 */
+	FrozenInvertedIndex(List<TermTrie> dictionaries, List<? extends List<PostingList>> postings, DocumentTable table, boolean withPositions) {
+		int[] rank = table.getRanks();
+		String[] paths = new String[table.size()];
+		for(int id = 0; id < paths.length; id++) {
+			paths[rank[id]] = table.getPath(id);
+		}
+		this.documents = new DocumentTable();
+		for(String path: paths) {
+			documents.add(path);
+		}
+		for(int id = 0; id < paths.length; id++) {
+			documents.setCount(rank[id], table.getCount(id));
+		}
+
+		// every word with its postings, in sorted order
+		int termCount = 0;
+		for(TermTrie dictionary: dictionaries) {
+			termCount += dictionary.size();
+		}
+		String[] words = new String[termCount];
+		PostingList[] lists = new PostingList[termCount];
+		int next = 0;
+		for(int d = 0; d < dictionaries.size(); d++) {
+			for(int ordinal: dictionaries.get(d).getAll()) {
+				words[next] = dictionaries.get(d).getTerm(ordinal);
+				lists[next++] = postings.get(d).get(ordinal);
+			}
+		}
+		if(dictionaries.size() > 1) {
+			// the words of every part are already sorted runs
+			Integer[] order = new Integer[termCount];
+			for(int t = 0; t < termCount; t++) {
+				order[t] = t;
+			}
+			Arrays.sort(order, (a, b) -> words[a].compareTo(words[b]));
+			String[] sortedWords = new String[termCount];
+			PostingList[] sortedLists = new PostingList[termCount];
+			for(int t = 0; t < termCount; t++) {
+				sortedWords[t] = words[order[t]];
+				sortedLists[t] = lists[order[t]];
+			}
+			System.arraycopy(sortedWords, 0, words, 0, termCount);
+			System.arraycopy(sortedLists, 0, lists, 0, termCount);
+		}
+
+		int postingCount = 0;
+		int byteCount = 0;
+		for(PostingList list: lists) {
+			postingCount += list.size();
+			for(int i = 0; withPositions && i < list.size(); i++) {
+				byteCount += list.getPositions(i).getByteLength();
+			}
+		}
+
+		this.terms = words;
+		int[] termOffsets = new int[termCount + 1];
+		int[] documentIds = new int[postingCount];
+		int[] counts = new int[postingCount];
+		int[] positionOffsets = withPositions ? new int[postingCount + 1] : null;
+		byte[] positions = withPositions ? new byte[byteCount] : null;
+
+		int posting = 0;
+		int position = 0;
+		for(int t = 0; t < termCount; t++) {
+			termOffsets[t] = posting;
+
+			// sort the entries by the new document id, keeping the entry index in the low bits
+			PostingList list = lists[t];
+			long[] order = new long[list.size()];
+			for(int i = 0; i < order.length; i++) {
+				order[i] = ((long) rank[list.getDocument(i)] << 32) | i;
+			}
+			Arrays.sort(order);
+
+			for(long key: order) {
+				documentIds[posting] = (int) (key >>> 32);
+				counts[posting] = list.getCount((int) key);
+				if(withPositions) {
+					positionOffsets[posting] = position;
+					position = list.getPositions((int) key).copyTo(positions, position);
+				}
+				posting++;
+			}
+		}
+		termOffsets[termCount] = posting;
+
+		this.termOffsets = IntBuffer.wrap(termOffsets);
+		this.documentIds = IntBuffer.wrap(documentIds);
+		this.counts = IntBuffer.wrap(counts);
+		if(withPositions) {
+			positionOffsets[postingCount] = position;
+			this.positionOffsets = IntBuffer.wrap(positionOffsets);
+			this.positions = ByteBuffer.wrap(positions);
+		} else {
+			this.positionOffsets = null;
+			this.positions = null;
+		}
+	}
+
+	/**
+	 * Initializes the index from already packed data
+	 * @param terms sorted words
+	 * @param termOffsets first posting of every word, plus the end
+	 * @param documentIds document id of every posting
+	 * @param counts number of positions of every posting
+	 * @param positionOffsets first byte of the positions of every posting, plus the end, null if the index keeps counts only
+	 * @param positions all the gap encoded positions, null if the index keeps counts only
+	 * @param documents document table with ids in path order
+	 *
+	 * @see IndexFile#load(Path)
+	 */
+	FrozenInvertedIndex(String[] terms, IntBuffer termOffsets, IntBuffer documentIds, IntBuffer counts,
+			IntBuffer positionOffsets, ByteBuffer positions, DocumentTable documents) {
+		this.terms = terms;
+		this.termOffsets = termOffsets;
+		this.documentIds = documentIds;
+		this.counts = counts;
+		this.positionOffsets = positionOffsets;
+		this.positions = positions;
+		this.documents = documents;
+	}
+
+	/**
+	 * Merge frozen indexes into one frozen index. The encoded positions are
+	 * copied as they are, only the postings of a document found in more than
+	 * one index are decoded and merged; the total word of such a document is
+	 * taken from the last index, like {@link InvertedIndex#addAll(InvertedIndex)}.
+	 * @param segments frozen indexes to merge, all with or all without positions
+	 * @return merged frozen index
+	 * @throws IllegalArgumentException if only some of the indexes have positions
+	 */
+	static FrozenInvertedIndex merge(List<FrozenInvertedIndex> segments) {
+		return merge(segments, Collections.nCopies(segments.size(), Set.of()));
+	}
+
+	/**
+	 * Return a copy of this index without the removed documents, plus the
+	 * documents of the added index. The positions are copied without decoding,
+	 * so an update costs about one copy of the index, not a rebuild.
+	 * @param removed locations of the documents of this index to remove, like
+	 * 	the deleted files and the old version of the changed files
+	 * @param added index of the new documents, with positions only if this index has
+	 * @return updated frozen index
+	 * @throws IllegalArgumentException if only one of the indexes has positions
+	 */
+	public FrozenInvertedIndex update(Set<String> removed, FrozenInvertedIndex added) {
+		return merge(List.of(this, added), List.of(removed, Set.of()));
+	}
+
+	/**
+	 * Merge frozen indexes into one frozen index, leaving out the postings and
+	 * the total word of the removed documents of every index. A word found only
+	 * in removed documents is left out too.
+	 * @param segments frozen indexes to merge, all with or all without positions
+	 * @param removed locations of the documents to remove from each index
+	 * @return merged frozen index
+	 * @throws IllegalArgumentException if only some of the indexes have positions
+	 */
+	private static FrozenInvertedIndex merge(List<FrozenInvertedIndex> segments, List<Set<String>> removed) {
+		boolean withPositions = segments.isEmpty() || segments.get(0).hasPositions();
+		int termTotal = 0;
+		int postingTotal = 0;
+		int byteTotal = 0;
+		for(FrozenInvertedIndex segment: segments) {
+			if(segment.hasPositions() != withPositions) {
+				throw new IllegalArgumentException("Cannot merge indexes with and without positions");
+			}
+			termTotal += segment.getTermCount();
+			postingTotal += segment.getPostingCount();
+			byteTotal += segment.getPositionByteCount();
+		}
+
+		// renumber the documents of every segment in path order
+		TreeMap<String, Integer> locations = new TreeMap<String, Integer>();
+		for(int s = 0; s < segments.size(); s++) {
+			FrozenInvertedIndex segment = segments.get(s);
+			for(int id = 0; id < segment.documents.size(); id++) {
+				if(!removed.get(s).contains(segment.documents.getPath(id))) {
+					locations.put(segment.documents.getPath(id), segment.documents.getCount(id));
+				}
+			}
+		}
+		DocumentTable documents = new DocumentTable();
+		for(String path: locations.keySet()) {
+			documents.setCount(documents.add(path), locations.get(path));
+		}
+		int[][] remap = new int[segments.size()][];
+		for(int s = 0; s < remap.length; s++) {
+			DocumentTable table = segments.get(s).documents;
+			remap[s] = new int[table.size()];
+			for(int id = 0; id < remap[s].length; id++) {
+				remap[s][id] = removed.get(s).contains(table.getPath(id)) ? -1 : documents.find(table.getPath(id));
+			}
+		}
+
+		String[] terms = new String[termTotal];
+		int[] termOffsets = new int[termTotal + 1];
+		int[] documentIds = new int[postingTotal];
+		int[] counts = new int[postingTotal];
+		int[] positionOffsets = withPositions ? new int[postingTotal + 1] : null;
+		byte[] positions = withPositions ? new byte[byteTotal] : null;
+
+		// segment cursors ordered by their current word
+		int[] cursor = new int[segments.size()];
+		PriorityQueue<Integer> heads = new PriorityQueue<Integer>(Math.max(segments.size(), 1),
+				(a, b) -> segments.get(a).terms[cursor[a]].compareTo(segments.get(b).terms[cursor[b]]));
+		for(int s = 0; s < segments.size(); s++) {
+			if(segments.get(s).getTermCount() > 0) {
+				heads.add(s);
+			}
+		}
+
+		int termCount = 0;
+		int posting = 0;
+		int position = 0;
+		ArrayList<Integer> owners = new ArrayList<Integer>();
+		while(!heads.isEmpty()) {
+			String term = segments.get(heads.peek()).terms[cursor[heads.peek()]];
+			owners.clear();
+			while(!heads.isEmpty() && segments.get(heads.peek()).terms[cursor[heads.peek()]].equals(term)) {
+				owners.add(heads.poll());
+			}
+
+			// every posting of the word with its segment, sorted by the new document id
+			int size = 0;
+			for(int s: owners) {
+				FrozenInvertedIndex segment = segments.get(s);
+				size += segment.termOffsets.get(cursor[s]+1) - segment.termOffsets.get(cursor[s]);
+			}
+			long[] order = new long[size];
+			int[] owner = new int[size];
+			int[] source = new int[size];
+			int k = 0;
+			for(int s: owners) {
+				FrozenInvertedIndex segment = segments.get(s);
+				int end = segment.termOffsets.get(cursor[s]+1);
+				for(int p = segment.termOffsets.get(cursor[s]); p < end; p++) {
+					if(remap[s][segment.documentIds.get(p)] < 0) {
+						continue;
+					}
+					owner[k] = s;
+					source[k] = p;
+					order[k] = ((long) remap[s][segment.documentIds.get(p)] << 32) | k;
+					k++;
+				}
+			}
+			if(k < size) {
+				order = Arrays.copyOf(order, k);
+			}
+			Arrays.sort(order);
+
+			terms[termCount] = term;
+			termOffsets[termCount++] = posting;
+			int first = posting;
+			for(long key: order) {
+				int document = (int) (key >>> 32);
+				FrozenInvertedIndex segment = segments.get(owner[(int) key]);
+				int p = source[(int) key];
+				if(posting > first && documentIds[posting-1] == document) {
+					// the same document in two segments, merge into the previous posting
+					if(withPositions) {
+						PositionList merged = new PositionList();
+						for(int value: VariableByte.decode(positions, positionOffsets[posting-1], counts[posting-1])) {
+							merged.add(value);
+						}
+						for(int value: segment.getPositions(p)) {
+							merged.add(value);
+						}
+						counts[posting-1] = merged.size();
+						position = merged.copyTo(positions, positionOffsets[posting-1]);
+					} else {
+						counts[posting-1] += segment.counts.get(p);
+					}
+					continue;
+				}
+				documentIds[posting] = document;
+				counts[posting] = segment.counts.get(p);
+				if(withPositions) {
+					positionOffsets[posting] = position;
+					int start = segment.positionOffsets.get(p);
+					int length = segment.positionOffsets.get(p+1) - start;
+					segment.positions.get(start, positions, position, length);
+					position += length;
+				}
+				posting++;
+			}
+			if(posting == first) {
+				//only found in removed documents
+				termCount--;
+			}
+
+			for(int s: owners) {
+				if(++cursor[s] < segments.get(s).getTermCount()) {
+					heads.add(s);
+				}
+			}
+		}
+		termOffsets[termCount] = posting;
+
+		IntBuffer offsetBuffer = null;
+		ByteBuffer positionBuffer = null;
+		if(withPositions) {
+			positionOffsets[posting] = position;
+			offsetBuffer = IntBuffer.wrap(Arrays.copyOf(positionOffsets, posting + 1));
+			positionBuffer = ByteBuffer.wrap(Arrays.copyOf(positions, position));
+		}
+		return new FrozenInvertedIndex(Arrays.copyOf(terms, termCount),
+				IntBuffer.wrap(Arrays.copyOf(termOffsets, termCount + 1)),
+				IntBuffer.wrap(Arrays.copyOf(documentIds, posting)),
+				IntBuffer.wrap(Arrays.copyOf(counts, posting)),
+				offsetBuffer, positionBuffer, documents);
+	}
+
+	/**
+	 * Return the document table of the index, ids in path order
+	 * @return document table
+	 */
+	DocumentTable getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * Return the number of postings in the index
+	 * @return number of postings
+	 */
+	public int getPostingCount() {
+		return documentIds.limit();
+	}
+
+	/**
+	 * Return true if the index keeps the positions of the words
+	 * @return true if the index keeps positions, false if it keeps counts only
+	 */
+	public boolean hasPositions() {
+		return positions != null;
+	}
+
+	/**
+	 * Return the number of bytes of all the encoded positions
+	 * @return number of bytes, 0 if the index keeps counts only
+	 */
+	public int getPositionByteCount() {
+		return positions != null ? positions.limit() : 0;
+	}
+
+	/**
+	 * Return a read only view of all the encoded positions
+	 * @return encoded positions, null if the index keeps counts only
+	 */
+	ByteBuffer getPositionBytes() {
+		return positions != null ? positions.asReadOnlyBuffer() : null;
+	}
+
+	/**
+	 * Return the number of positions of the given posting, without decoding
+	 * @param posting index of the posting
+	 * @return how many times the word was found in the document
+	 */
+	public int getCount(int posting) {
+		return counts.get(posting);
+	}
+
+	/**
+	 * Return the document id of the given posting
+	 * @param posting index of the posting
+	 * @return document id
+	 */
+	public int getPostingDocument(int posting) {
+		return documentIds.get(posting);
+	}
+
+	/**
+	 * Return the number of words in the index
+	 * @return number of words
+	 */
+	public int getTermCount() {
+		return terms.length;
+	}
+
+	/**
+	 * Return the word at the given index
+	 * @param term index of the word in sorted order
+	 * @return the word
+	 */
+	public String getTerm(int term) {
+		return terms[term];
+	}
+
+	/**
+	 * Return the index of the first posting of the given word
+	 * @param term index of the word in sorted order
+	 * @return index of the first posting, the first posting of the next word is the end
+	 */
+	public int getPostingStart(int term) {
+		return termOffsets.get(term);
+	}
+
+	/**
+	 * Return the path of the document of the given posting
+	 * @param posting index of the posting
+	 * @return path of the document
+	 */
+	public String getPostingPath(int posting) {
+		return documents.getPath(documentIds.get(posting));
+	}
+
+	/**
+	 * Return the first byte of the encoded positions of the given posting
+	 * @param posting index of the posting
+	 * @return index of the first byte, the first byte of the next posting is the end, 0 if the index keeps counts only
+	 */
+	public int getPositionStart(int posting) {
+		return positionOffsets != null ? positionOffsets.get(posting) : 0;
+	}
+
+	/**
+	 * Decode the positions of the given posting
+	 * @param posting index of the posting
+	 * @return sorted positions of the word in the document, null if the index keeps counts only
+	 *
+	 * @see VariableByte#decode(ByteBuffer, int, int)
+	 */
+	public int[] getPositions(int posting) {
+		if(positions == null) {
+			return null;
+		}
+		return VariableByte.decode(positions, positionOffsets.get(posting), counts.get(posting));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean containsWord(String word) {
+		return Arrays.binarySearch(terms, word) >= 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getTotalWords(String path) {
+		int document = documents.find(path);
+		return document >= 0 ? documents.getCount(document) : 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isEmpty() {
+		return terms.length == 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see TreeJSONWriter#asDoubleNestedObject(FrozenInvertedIndex, Path)
+	 */
+	@Override
+	public void toIndexJSON(Path path) throws IOException {
+		TreeJSONWriter.asDoubleNestedObject(this, path);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see DocumentTable#toLocations()
+	 */
+	@Override
+	public void toLocationsJSON(Path path) throws IOException {
+		TreeJSONWriter.asObject(documents.toLocations(), path);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ArrayList<OneResult> partialSearch(TreeSet<String> oneLineQuery) {
+		OneResult[] result = new OneResult[documents.size()];
+		ArrayList<OneResult> list = new ArrayList<>();
+		for(String oneQuery: oneLineQuery) {
+			int start = lowerBound(oneQuery);
+			int end = prefixEnd(oneQuery, start);
+			for(int term = start; term < end; term++) {
+				searchHelper(result, term, list);
+			}
+		}
+		Collections.sort(list);
+		return list;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ArrayList<OneResult> exactSearch(TreeSet<String> oneLineQuery) {
+		OneResult[] result = new OneResult[documents.size()];
+		ArrayList<OneResult> list = new ArrayList<>();
+		for(String oneQuery: oneLineQuery) {
+			int term = Arrays.binarySearch(terms, oneQuery);
+			if(term >= 0) {
+				searchHelper(result, term, list);
+			}
+		}
+		Collections.sort(list);
+		return list;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ArrayList<OneResult> partialSearch(String word) {
+		ArrayList<OneResult> list = new ArrayList<>();
+		int start = lowerBound(word);
+		int end = prefixEnd(word, start);
+		for(int term = start; term < end; term++) {
+			searchHelper(term, list);
+		}
+		Collections.sort(list);
+		return list;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ArrayList<OneResult> exactSearch(String word) {
+		ArrayList<OneResult> list = new ArrayList<>();
+		int term = Arrays.binarySearch(terms, word);
+		if(term >= 0) {
+			searchHelper(term, list);
+		}
+		Collections.sort(list);
+		return list;
+	}
+
+	/**
+	 * Search helper method
+	 * @param result search result of each document, indexed by document id
+	 * @param term index of the word in sorted order
+	 * @param list returned array list
+	 */
+	private void searchHelper(OneResult[] result, int term, ArrayList<OneResult> list) {
+		int end = termOffsets.get(term+1);
+		for(int posting = termOffsets.get(term); posting < end; posting++) {
+			int document = documentIds.get(posting);
+			if(result[document] != null) {
+				result[document].updateCount(counts.get(posting));
+			} else {
+				OneResult oneResult = new OneResult(documents, document, counts.get(posting));
+				result[document] = oneResult;
+				list.add(oneResult);
+			}
+		}
+	}
+
+	/**
+	 * Search helper method for one word, every posting becomes its own result
+	 * @param term index of the word in sorted order
+	 * @param list returned array list
+	 */
+	private void searchHelper(int term, ArrayList<OneResult> list) {
+		int end = termOffsets.get(term+1);
+		for(int posting = termOffsets.get(term); posting < end; posting++) {
+			list.add(new OneResult(documents, documentIds.get(posting), counts.get(posting)));
+		}
+	}
+
+	/**
+	 * Return the index of the first word greater than or equal to the given word
+	 * @param word query word
+	 * @return index of the first word not less than the query word
+	 */
+	private int lowerBound(String word) {
+		int found = Arrays.binarySearch(terms, word);
+		return found >= 0 ? found : -(found+1);
+	}
+
+	/**
+	 * Return the index after the last word starting with the given prefix.
+	 * The words starting with the prefix are one run beginning at start, so the
+	 * end is found by a binary search instead of testing every word.
+	 * @param prefix query word
+	 * @param start index of the first word not less than the prefix
+	 * @return index after the last matching word
+	 */
+	private int prefixEnd(String prefix, int start) {
+		int low = start;
+		int high = terms.length;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(terms[middle].startsWith(prefix)) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
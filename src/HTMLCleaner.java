@@ -1,3 +1,4 @@
+import java.nio.CharBuffer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -129,4 +130,232 @@ public class HTMLCleaner {
 
 		return html;
 	}
+
+	// THE FOLLOWING STRIP THE HTML IN ONE BUFFER WITHOUT REGULAR EXPRESSIONS
+
+	/**
+	 * Removes all HTML like {@link #stripHTML(String)}, giving the same text,
+	 * without the regular expressions. The page is copied once into a buffer,
+	 * and each step is a forward scan compacting the buffer in place, so no
+	 * step makes a new copy of the page. The text is returned as a view of the
+	 * buffer, to hand straight to {@link TextParser#tokenize(CharSequence, java.util.function.Consumer)}.
+	 *
+	 * @param html text including HTML to remove
+	 * @return text without any HTML, CSS, or JavaScript
+	 *
+	 * @see #stripHTML(String)
+	 */
+	public static CharSequence scanHTML(String html) {
+		char[] buffer = html.toCharArray();
+		int length = buffer.length;
+
+		//same steps and order as stripHTML, each scan sees the text left by the one before
+		length = scanComments(buffer, length);
+		length = scanElement(buffer, length, "head");
+		length = scanElement(buffer, length, "style");
+		length = scanElement(buffer, length, "script");
+		length = scanTags(buffer, length);
+		length = scanEntities(buffer, length);
+
+		return CharBuffer.wrap(buffer, 0, length);
+	}
+
+	/**
+	 * Replaces every "&lt;!--" up to the next "--&gt;" with a single space
+	 * @param buffer text to compact in place
+	 * @param length length of the text in the buffer
+	 * @return new length of the text
+	 *
+	 * @see #stripComments(String)
+	 */
+	private static int scanComments(char[] buffer, int length) {
+		int read = 0;
+		int write = 0;
+		while(true) {
+			int start = indexOf(buffer, length, "<!--", read);
+			if(start < 0) {
+				break;
+			}
+			int end = indexOf(buffer, length, "-->", start + 4);
+			if(end < 0) {
+				//no later comment can end either
+				break;
+			}
+			write = move(buffer, read, start, write);
+			buffer[write++] = ' ';
+			read = end + 3;
+		}
+		return move(buffer, read, length, write);
+	}
+
+	/**
+	 * Replaces every "&lt;name" up to the next name followed by optional white
+	 * space and "&gt;" with a single space, ignoring the ASCII case of the name
+	 * @param buffer text to compact in place
+	 * @param length length of the text in the buffer
+	 * @param name lower case name of the HTML element
+	 * @return new length of the text
+	 *
+	 * @see #stripElement(String, String)
+	 */
+	private static int scanElement(char[] buffer, int length, String name) {
+		int read = 0;
+		int write = 0;
+		int from = 0;
+		while(true) {
+			int start = indexOf(buffer, length, '<', from);
+			if(start < 0) {
+				break;
+			}
+			if(!matchesName(buffer, length, start + 1, name)) {
+				from = start + 1;
+				continue;
+			}
+			int end = -1;
+			for(int i = start + 1 + name.length(); end < 0 && i <= length - name.length(); i++) {
+				if(matchesName(buffer, length, i, name)) {
+					int j = i + name.length();
+					while(j < length && isSpace(buffer[j])) {
+						j++;
+					}
+					if(j < length && buffer[j] == '>') {
+						end = j + 1;
+					}
+				}
+			}
+			if(end < 0) {
+				//a later element would search the same text for its end
+				break;
+			}
+			write = move(buffer, read, start, write);
+			buffer[write++] = ' ';
+			read = end;
+			from = end;
+		}
+		return move(buffer, read, length, write);
+	}
+
+	/**
+	 * Removes every "&lt;" up to the next "&gt;"
+	 * @param buffer text to compact in place
+	 * @param length length of the text in the buffer
+	 * @return new length of the text
+	 *
+	 * @see #stripTags(String)
+	 */
+	private static int scanTags(char[] buffer, int length) {
+		int read = 0;
+		int write = 0;
+		while(true) {
+			int start = indexOf(buffer, length, '<', read);
+			if(start < 0) {
+				break;
+			}
+			int end = indexOf(buffer, length, '>', start + 1);
+			if(end < 0) {
+				break;
+			}
+			write = move(buffer, read, start, write);
+			read = end + 1;
+		}
+		return move(buffer, read, length, write);
+	}
+
+	/**
+	 * Removes every "&amp;" followed by entity characters, an optional "." and ";"
+	 * @param buffer text to compact in place
+	 * @param length length of the text in the buffer
+	 * @return new length of the text
+	 *
+	 * @see #stripEntities(String)
+	 */
+	private static int scanEntities(char[] buffer, int length) {
+		int read = 0;
+		int write = 0;
+		int from = 0;
+		while(true) {
+			int start = indexOf(buffer, length, '&', from);
+			if(start < 0) {
+				break;
+			}
+			int end = start + 1;
+			while(end < length && isEntity(buffer[end])) {
+				end++;
+			}
+			if(end > start + 1 && end < length && buffer[end] == '.') {
+				end++;
+			}
+			if(end == start + 1 || end >= length || buffer[end] != ';') {
+				from = start + 1;
+				continue;
+			}
+			write = move(buffer, read, start, write);
+			read = end + 1;
+			from = end + 1;
+		}
+		return move(buffer, read, length, write);
+	}
+
+	/**
+	 * Move the text between from and to back to the write position
+	 * @return write position after the moved text
+	 */
+	private static int move(char[] buffer, int from, int to, int write) {
+		if(from != write) {
+			System.arraycopy(buffer, from, buffer, write, to - from);
+		}
+		return write + to - from;
+	}
+
+	private static int indexOf(char[] buffer, int length, char c, int from) {
+		for(int i = from; i < length; i++) {
+			if(buffer[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOf(char[] buffer, int length, String s, int from) {
+		char first = s.charAt(0);
+		for(int i = indexOf(buffer, length, first, from); i >= 0 && i <= length - s.length(); i = indexOf(buffer, length, first, i + 1)) {
+			int j = 1;
+			while(j < s.length() && buffer[i + j] == s.charAt(j)) {
+				j++;
+			}
+			if(j == s.length()) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Check for the lower case name at the index, ignoring only the ASCII case
+	 * like the case insensitive regular expression does
+	 */
+	private static boolean matchesName(char[] buffer, int length, int index, String name) {
+		if(index + name.length() > length) {
+			return false;
+		}
+		for(int i = 0; i < name.length(); i++) {
+			char c = buffer[index + i];
+			char lower = name.charAt(i);
+			if(c != lower && c != lower - 'a' + 'A') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//white space as \s matches it
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	//characters in [\d|<p>{#}|a-zA-Z]
+	private static boolean isEntity(char c) {
+		return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+				|| c == '|' || c == '<' || c == '>' || c == '{' || c == '#' || c == '}';
+	}
 }
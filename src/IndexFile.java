@@ -0,0 +1,280 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * IndexFile class
+ * 	save a {@link FrozenInvertedIndex} to a binary file and load it back by
+ * 	memory mapping the file, so the postings stay in the OS page cache instead
+ * 	of being rebuilt on the Java heap at every start.
+ *
+ * 	File layout, all numbers are big endian ints except the positions:
+ * <pre>
+ * header      MAGIC, VERSION, flags, documents, terms, postings, position bytes
+ * documents   (total word, length, UTF-8 path bytes) for every document, in path order
+ * terms       (length, UTF-8 word bytes) for every word, in sorted order
+ * padding     zero bytes up to a multiple of 4
+ * offsets     terms+1 ints, the first posting of every word
+ * documentIds postings ints
+ * counts      postings ints, the number of positions of every posting
+ * offsets     postings+1 ints, the first position byte of every posting
+ * positions   position bytes, the gap encoded positions, see {@link VariableByte}
+ * manifest    files, then (length, UTF-8 path bytes, size, modified, hash) for every file
+ * length      long, number of bytes of the manifest section
+ * </pre>
+ * 	The offsets and positions sections are left out if the flags do not have
+ * 	{@link #FLAG_POSITIONS}, the last two sections if they do not have
+ * 	{@link #FLAG_MANIFEST}. The manifest is found from the end of the file,
+ * 	so readers that do not know it still load the index.
+ * @author Hao Shen
+ *
+ */
+public class IndexFile {
+
+	/** First int of every index file. */
+	public static final int MAGIC = 0x53454958;
+
+	/** Version of the file layout. */
+	public static final int VERSION = 3;
+
+	/** Flag set if the file has the positions of the words. */
+	public static final int FLAG_POSITIONS = 1;
+
+	/** Flag set if the file ends with the manifest of the indexed files. */
+	public static final int FLAG_MANIFEST = 2;
+
+	/**
+	 * Write the frozen index to the given file
+	 * @param index frozen index
+	 * @param path output file location
+	 * @throws IOException if unable to write the file
+	 */
+	public static void write(FrozenInvertedIndex index, Path path) throws IOException {
+		write(index, null, path);
+	}
+
+	/**
+	 * Write the frozen index and the manifest of its files to the given file.
+	 * The index is written to a temporary file first and moved over the given
+	 * file, so an index loaded from that file stays readable while it is replaced.
+	 * @param index frozen index
+	 * @param manifest manifest of the indexed files, null to leave it out
+	 * @param path output file location
+	 * @throws IOException if unable to write the file
+	 *
+	 * @see #loadManifest(Path)
+	 */
+	public static void write(FrozenInvertedIndex index, IndexManifest manifest, Path path) throws IOException {
+		DocumentTable documents = index.getDocuments();
+		int termCount = index.getTermCount();
+		int postingCount = index.getPostingCount();
+		int flags = (index.hasPositions() ? FLAG_POSITIONS : 0) | (manifest != null ? FLAG_MANIFEST : 0);
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(flags);
+			out.writeInt(documents.size());
+			out.writeInt(termCount);
+			out.writeInt(postingCount);
+			out.writeInt(index.getPositionByteCount());
+
+			for(int id = 0; id < documents.size(); id++) {
+				out.writeInt(documents.getCount(id));
+				writeString(documents.getPath(id), out);
+			}
+			for(int term = 0; term < termCount; term++) {
+				writeString(index.getTerm(term), out);
+			}
+			while(out.size() % Integer.BYTES != 0) {
+				out.writeByte(0);
+			}
+
+			for(int term = 0; term <= termCount; term++) {
+				out.writeInt(index.getPostingStart(term));
+			}
+			for(int posting = 0; posting < postingCount; posting++) {
+				out.writeInt(index.getPostingDocument(posting));
+			}
+			for(int posting = 0; posting < postingCount; posting++) {
+				out.writeInt(index.getCount(posting));
+			}
+			if(index.hasPositions()) {
+				for(int posting = 0; posting <= postingCount; posting++) {
+					out.writeInt(index.getPositionStart(posting));
+				}
+				ByteBuffer positions = index.getPositionBytes();
+				byte[] chunk = new byte[1 << 16];
+				while(positions.hasRemaining()) {
+					int length = Math.min(chunk.length, positions.remaining());
+					positions.get(chunk, 0, length);
+					out.write(chunk, 0, length);
+				}
+			}
+			if(manifest != null) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream section = new DataOutputStream(bytes);
+				section.writeInt(manifest.size());
+				for(String location: manifest.getLocations()) {
+					IndexManifest.Entry entry = manifest.get(location);
+					writeString(location, section);
+					section.writeLong(entry.getSize());
+					section.writeLong(entry.getModified());
+					section.writeLong(entry.getHash());
+				}
+				bytes.writeTo(out);
+				out.writeLong(bytes.size());
+			}
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Load the index file by memory mapping it. The words and paths are read
+	 * onto the heap, the packed postings are served straight from the mapping.
+	 * @param path index file location
+	 * @return frozen index backed by the file
+	 * @throws IOException if unable to read the file or the file is not an index file
+	 *
+	 * @see FileChannel#map(FileChannel.MapMode, long, long)
+	 */
+	public static FrozenInvertedIndex load(Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, 7 * Integer.BYTES);
+			if(header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException("Not a search engine index file: " + path);
+			}
+			int flags = header.getInt();
+			int documentCount = header.getInt();
+			int termCount = header.getInt();
+			int postingCount = header.getInt();
+			int positionBytes = header.getInt();
+
+			// the strings come before the packed ints, read them with a growing window
+			long offset = header.position();
+			ByteBuffer strings = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(channel.size() - offset, Integer.MAX_VALUE));
+
+			DocumentTable documents = new DocumentTable();
+			for(int id = 0; id < documentCount; id++) {
+				int count = strings.getInt();
+				documents.add(readString(strings));
+				documents.setCount(id, count);
+			}
+			String[] terms = new String[termCount];
+			for(int term = 0; term < termCount; term++) {
+				terms[term] = readString(strings);
+			}
+			offset += strings.position();
+			offset += (Integer.BYTES - offset % Integer.BYTES) % Integer.BYTES;
+
+			IntBuffer termOffsets = mapInts(channel, offset, termCount + 1);
+			offset += (long) (termCount + 1) * Integer.BYTES;
+			IntBuffer documentIds = mapInts(channel, offset, postingCount);
+			offset += (long) postingCount * Integer.BYTES;
+			IntBuffer counts = mapInts(channel, offset, postingCount);
+			offset += (long) postingCount * Integer.BYTES;
+			IntBuffer positionOffsets = null;
+			ByteBuffer positions = null;
+			if((flags & FLAG_POSITIONS) != 0) {
+				positionOffsets = mapInts(channel, offset, postingCount + 1);
+				offset += (long) (postingCount + 1) * Integer.BYTES;
+				if(offset + positionBytes > channel.size()) {
+					throw new IOException("Index file is truncated");
+				}
+				positions = channel.map(FileChannel.MapMode.READ_ONLY, offset, positionBytes);
+			}
+
+			// the mappings stay valid after the channel is closed
+			return new FrozenInvertedIndex(terms, termOffsets, documentIds, counts, positionOffsets, positions, documents);
+		}
+	}
+
+	/**
+	 * Load the manifest saved with the index
+	 * @param path index file location
+	 * @return manifest of the indexed files, null if the file has none
+	 * @throws IOException if unable to read the file or the file is not an index file
+	 *
+	 * @see #write(FrozenInvertedIndex, IndexManifest, Path)
+	 */
+	public static IndexManifest loadManifest(Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(3 * Integer.BYTES);
+			channel.read(header, 0);
+			header.flip();
+			if(header.remaining() < header.capacity() || header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException("Not a search engine index file: " + path);
+			}
+			if((header.getInt() & FLAG_MANIFEST) == 0) {
+				return null;
+			}
+
+			ByteBuffer length = ByteBuffer.allocate(Long.BYTES);
+			channel.read(length, channel.size() - Long.BYTES);
+			length.flip();
+			long bytes = length.getLong();
+			long offset = channel.size() - Long.BYTES - bytes;
+			if(bytes < 0 || offset < 0) {
+				throw new IOException("Index file is truncated");
+			}
+			ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes);
+			IndexManifest manifest = new IndexManifest();
+			int files = section.getInt();
+			for(int i = 0; i < files; i++) {
+				String location = readString(section);
+				manifest.put(location, new IndexManifest.Entry(section.getLong(), section.getLong(), section.getLong()));
+			}
+			return manifest;
+		}
+	}
+
+	/**
+	 * Map a section of ints of the file
+	 * @param channel open file channel
+	 * @param offset start of the section in bytes
+	 * @param count number of ints in the section
+	 * @return read only int view of the section
+	 * @throws IOException if the section is past the end of the file
+	 */
+	private static IntBuffer mapInts(FileChannel channel, long offset, int count) throws IOException {
+		long bytes = (long) count * Integer.BYTES;
+		if(offset + bytes > channel.size()) {
+			throw new IOException("Index file is truncated");
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes).asIntBuffer();
+	}
+
+	/**
+	 * Write the length and the UTF-8 bytes of the string
+	 * @param value string to write
+	 * @param out output stream
+	 * @throws IOException if unable to write
+	 */
+	private static void writeString(String value, DataOutputStream out) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Read a string written by {@link #writeString(String, DataOutputStream)}
+	 * @param buffer buffer positioned at the length of the string
+	 * @return the string
+	 */
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+/**
+ * IndexManifest class
+ * 	the size, modified time and content hash of every file an index was
+ * 	built from, saved with the index so a later build can tell which files
+ * 	were added, changed or deleted since. A file with the same size and
+ * 	modified time is taken as unchanged without being read, a file that was
+ * 	only touched is found unchanged by its hash.
+ * @author Hao Shen
+ *
+ * @see IndexFile#loadManifest(Path)
+ */
+public class IndexManifest {
+
+	//reflected Castagnoli polynomial of CRC-32C
+	private static final long POLYNOMIAL = 0x82F63B78L;
+
+	//location -> size, modified time, hash
+	private final TreeMap<String, Entry> entries;
+
+	/**
+	 * Initializes an empty manifest
+	 */
+	public IndexManifest() {
+		this.entries = new TreeMap<String, Entry>();
+	}
+
+	/**
+	 * Return the locations of the files, in sorted order
+	 * @return set view of the locations
+	 */
+	public Set<String> getLocations() {
+		return entries.keySet();
+	}
+
+	/**
+	 * Return the entry of the given location
+	 * @param location path of the file
+	 * @return entry of the file, null if the file is not in the manifest
+	 */
+	public Entry get(String location) {
+		return entries.get(location);
+	}
+
+	/**
+	 * Put the entry of the given location, safe to call from the workers
+	 * building the index
+	 * @param location path of the file
+	 * @param entry size, modified time and hash of the file
+	 */
+	public synchronized void put(String location, Entry entry) {
+		entries.put(location, entry);
+	}
+
+	/**
+	 * Return the number of files in the manifest
+	 * @return number of files
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Compare the files found now with this manifest
+	 * @param files text files to index
+	 * @param changed receives the files that are new or whose content changed
+	 * @param removed receives the locations whose documents are out of date:
+	 * 	the deleted files and the changed files already in this manifest
+	 * @return manifest of the unchanged files, the changed files are put by
+	 * 	the build once they are read
+	 */
+	public IndexManifest update(Collection<Path> files, List<Path> changed, Set<String> removed) {
+		IndexManifest result = new IndexManifest();
+		for(Path file: files) {
+			String location = file.toString();
+			Entry old = entries.get(location);
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				if(old != null && old.size == attributes.size()) {
+					if(old.modified == attributes.lastModifiedTime().toMillis()) {
+						result.put(location, old);
+						continue;
+					}
+					//touched only if the content is the same
+					Entry entry = new Entry(attributes, hash(file));
+					if(old.hash == entry.hash) {
+						result.put(location, entry);
+						continue;
+					}
+				}
+			} catch(IOException e) {
+				//the build fails on it too, leaving it out of the manifest
+			}
+			changed.add(file);
+			if(old != null) {
+				removed.add(location);
+			}
+		}
+		for(String location: entries.keySet()) {
+			if(!result.entries.containsKey(location)) {
+				removed.add(location);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Hash the content of the file
+	 * @param file file to read
+	 * @return CRC-32C of the bytes of the file
+	 * @throws IOException if unable to read the file
+	 */
+	public static long hash(Path file) throws IOException {
+		CRC32C crc = new CRC32C();
+		byte[] buffer = new byte[1 << 16];
+		try(InputStream in = Files.newInputStream(file)) {
+			int read;
+			while((read = in.read(buffer)) >= 0) {
+				crc.update(buffer, 0, read);
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Combine the hashes of two consecutive parts of a file
+	 * @param first CRC-32C of the first part
+	 * @param second CRC-32C of the second part
+	 * @param length number of bytes of the second part
+	 * @return CRC-32C of the two parts together
+	 *
+	 * @see <a href="https://github.com/madler/zlib/blob/master/crc32.c">crc32_combine of zlib</a>
+	 */
+	public static long combine(long first, long second, long length) {
+		//multiply the first by x^(8 * length) modulo the polynomial
+		long power = 1L << 31;
+		long square = 1L << 30;
+		for(long n = length * 8; n != 0; n >>>= 1) {
+			if((n & 1) != 0) {
+				power = multiply(square, power);
+			}
+			square = multiply(square, square);
+		}
+		return multiply(power, first) ^ second;
+	}
+
+	/**
+	 * Multiply two polynomials modulo the reflected CRC-32C polynomial
+	 */
+	private static long multiply(long a, long b) {
+		long product = 0;
+		for(long bit = 1L << 31; bit != 0; bit >>>= 1) {
+			if((a & bit) != 0) {
+				product ^= b;
+			}
+			b = (b & 1) != 0 ? (b >>> 1) ^ POLYNOMIAL : b >>> 1;
+		}
+		return product;
+	}
+
+	/**
+	 * Entry class
+	 * 	size, modified time and content hash of one file
+	 */
+	public static class Entry {
+
+		private final long size;
+		//milliseconds since the epoch
+		private final long modified;
+		private final long hash;
+
+		public Entry(long size, long modified, long hash) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+
+		public Entry(BasicFileAttributes attributes, long hash) {
+			this(attributes.size(), attributes.lastModifiedTime().toMillis(), hash);
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getModified() {
+			return modified;
+		}
+
+		public long getHash() {
+			return hash;
+		}
+	}
+}
@@ -3,8 +3,10 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.List;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
@@ -14,19 +16,43 @@ import java.util.TreeSet;
  * @author Hao Shen
  *
  */
-public class InvertedIndex {
+public class InvertedIndex implements InvertedIndexInterface {
 
 	//data structure
-	//TreeMap<word, TreeMap<path, TreeSet<position>>>
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> index;
-	private final TreeMap<String, Integer> locations;
-
+	//word -> ordinal
+	private final TermTrie terms;
+	//ordinal -> PostingList<document id, PositionList>
+	private final ArrayList<PostingList> index;
+	//document id <-> path, total word
+	private final DocumentTable documents;
+	//false to keep only the count of each word in each document
+	private final boolean positions;
+
 	/**
 	 * Initializes the inverted index. 
 	 */
 	public InvertedIndex() {
-		this.index = new TreeMap<String, TreeMap<String, TreeSet<Integer>>>();
-		this.locations = new TreeMap<String, Integer>();
+		this(true);
+	}
+
+	/**
+	 * Initializes the inverted index.
+	 * @param positions false to keep only the count of each word in each
+	 * 	document, searching works the same but the positions are not available
+	 */
+	public InvertedIndex(boolean positions) {
+		this.terms = new TermTrie();
+		this.index = new ArrayList<PostingList>();
+		this.documents = new DocumentTable();
+		this.positions = positions;
+	}
+
+	/**
+	 * Return true if the index keeps the positions of the words
+	 * @return true if the index keeps positions, false if it keeps counts only
+	 */
+	public boolean hasPositions() {
+		return positions;
 	}
 
 	/**
@@ -36,8 +62,11 @@ public class InvertedIndex {
 	 * @see Collections#unmodifiableSet(Set)
 	 */
 	public Set<String> getWordSet() {
-		Set<String> result = index.keySet();
-		return (result != null ? Collections.unmodifiableSet(result) : null);
+		TreeSet<String> result = new TreeSet<String>();
+		for(int ordinal: terms.getAll()) {
+			result.add(terms.getTerm(ordinal));
+		}
+		return Collections.unmodifiableSet(result);
 	}
 
 	/**
@@ -45,36 +74,44 @@ public class InvertedIndex {
 	 * @param word key
 	 * @return Set<String>
 	 * 
-	 * @see java.util.TreeMap#keySet()
+	 * @see DocumentTable#getPath(int)
 	 * @see Collections#unmodifiableSet(Set)
 	 */
 	public Set<String> getPathSet(String word) {
-		TreeMap<String, TreeSet<Integer>> result = index.get(word);
-		return (result != null ? Collections.unmodifiableSet(result.keySet()) : null);
+		PostingList result = getPostings(word);
+		if(result == null) {
+			return null;
+		}
+		TreeSet<String> paths = new TreeSet<String>();
+		for(int i = 0; i < result.size(); i++) {
+			paths.add(documents.getPath(result.getDocument(i)));
+		}
+		return Collections.unmodifiableSet(paths);
 	}
 
 	/**
 	 * Return the set of given key at given position
 	 * @param word key
 	 * @param position key
-	 * @return value of the given word at given position
+	 * @return value of the given word at given position, null if the index keeps counts only
 	 * 
-	 * @see Collections#unmodifiableSortedSet(SortedSet)
+	 * @see PositionList#toSortedSet()
 	 */
 	public SortedSet<Integer> getPositionSet(String word, String path) {
-		TreeSet<Integer> result = getterPosition(word, path);
-		return (result != null ? Collections.unmodifiableSortedSet(result) : null);
+		PositionList result = getterPosition(word, path);
+		return (result != null ? result.toSortedSet() : null);
 	}
 
 	/**
-	 * Helper method return a TreeSet of given word and path
-	 * @param word key for the TreeMap
-	 * @param path key for the TreeMap
-	 * @return TreeSet<Integer>
+	 * Helper method return a PositionList of given word and path
+	 * @param word key for the term dictionary
+	 * @param path key for the document table
+	 * @return PositionList
 	 */
-	private TreeSet<Integer> getterPosition(String word, String path) {
-		TreeMap<String, TreeSet<Integer>> result = index.get(word);
-		return (result != null ? result.get(path) : null);
+	private PositionList getterPosition(String word, String path) {
+		PostingList result = getPostings(word);
+		int document = documents.find(path);
+		return (result != null && document >= 0 ? result.find(document) : null);
 	}
 
 	/**
@@ -83,7 +120,8 @@ public class InvertedIndex {
 	 * @return true if the map contains a key, false otherwise
 	 */
 	public boolean containsWord(String word) {
-		return (!isEmpty() ? index.containsKey(word) : false);
+		// not isEmpty(), the thread safe index would take its read lock twice
+		return terms.get(word) >= 0;
 	}
 
 	/**
@@ -93,8 +131,9 @@ public class InvertedIndex {
 	 * @return true if the path in the given word already exist, false otherwise
 	 */
 	public boolean containsPath(String word, String path) {
-		TreeMap<String, TreeSet<Integer>> result = index.get(word);
-		return (result != null ? result.containsKey(path) : false);
+		PostingList result = getPostings(word);
+		int document = documents.find(path);
+		return (result != null && document >= 0 ? result.findCount(document) > 0 : false);
 	}
 
 	/**
@@ -105,7 +144,7 @@ public class InvertedIndex {
 	 * @return true if the word in the given file and given position already exist, false otherwise
 	 */
 	public boolean containsPosition(String word, String path, int position) {
-		TreeSet<Integer> result = getterPosition(word, path);
+		PositionList result = getterPosition(word, path);
 		return (result != null ? result.contains(position) : false);
 	}
 
@@ -120,16 +159,89 @@ public class InvertedIndex {
 	}
 
 	/**
-	 * Put in the given path and given count to the location map
-	 * @param path key, represent the path
-	 * @param count value, represent the total word in the path
-	 * @return 
+	 * Put all the words of one document at once. The positions of every word
+	 * are collected locally first, then every word is inserted once and the
+	 * total word of the document is updated once.
+	 * @param location the path of the file
+	 * @param words the words of the document in order, the first one at position 1;
+	 * 	nothing is added for a document without words
+	 *
+	 * @see #putDocument(String, List, int)
+	 */
+	public void putDocument(String location, List<String> words) {
+		putDocument(location, words, 1);
+	}
+
+	/**
+	 * Put all the words of one document at once, starting at the given position
+	 * @param location the path of the file
+	 * @param words the words of the document in order
+	 * @param start the position of the first word
+	 */
+	public void putDocument(String location, List<String> words, int start) {
+		putDocument(location, collect(words, start), words.size());
+	}
+
+	/**
+	 * Group the positions of the words of one document by word
+	 * @param words the words of the document in order
+	 * @param start the position of the first word
+	 * @return word -> positions
 	 */
-	private void incrementLocation(String path) {
-		if(this.locations.containsKey(path)) {
-			this.locations.put(path, this.locations.get(path).intValue()+1);
-		} else {
-			this.locations.put(path, 1);
+	static HashMap<String, PositionList> collect(List<String> words, int start) {
+		HashMap<String, PositionList> result = new HashMap<String, PositionList>();
+		for(String word: words) {
+			result.computeIfAbsent(word, key -> new PositionList()).add(start++);
+		}
+		return result;
+	}
+
+	/**
+	 * Put the grouped positions of one document
+	 * @param location the path of the file
+	 * @param positions word -> positions, see {@link #collect(List, int)}
+	 * @param total number of words in the document
+	 */
+	void putDocument(String location, Map<String, PositionList> positions, int total) {
+		if(total == 0) {
+			return;
+		}
+		int document = documents.add(location);
+		documents.setCount(document, documents.getCount(document) + total);
+		for(Map.Entry<String, PositionList> entry: positions.entrySet()) {
+			getOrCreatePostings(entry.getKey(), 2).addPositions(document, entry.getValue());
+		}
+	}
+
+	/**
+	 * Return the ordinal of the given word, adding the word with empty
+	 * postings if it is new
+	 * @param word index word
+	 * @return ordinal of the word
+	 *
+	 * @see #putDocument(String, int[], PositionList[], int, int)
+	 */
+	int intern(String word) {
+		return intern(word, 2);
+	}
+
+	/**
+	 * Put the positions of one document grouped by word ordinal
+	 * @param location the path of the file
+	 * @param ordinals ordinals of the words of the document, see {@link #intern(String)}
+	 * @param positions positions of the word of each ordinal in the same order,
+	 * 	owned by the index afterwards
+	 * @param count number of distinct words in the document
+	 * @param total number of words in the document
+	 */
+	void putDocument(String location, int[] ordinals, PositionList[] positions, int count, int total) {
+		if(total == 0) {
+			return;
+		}
+		int document = documents.add(location);
+		documents.setCount(document, documents.getCount(document) + total);
+		for(int i = 0; i < count; i++) {
+			index.get(ordinals[i]).addPositions(document, positions[i]);
 		}
 	}
 
@@ -139,9 +251,10 @@ public class InvertedIndex {
 	 * @throws IOException
 	 * 
 	 * {@link TreeJSONWriter#asObject(TreeMap)}
+	 * @see DocumentTable#toLocations()
 	 */
 	public void toLocationsJSON(Path path) throws IOException {
-		TreeJSONWriter.asObject(locations, path);
+		TreeJSONWriter.asObject(documents.toLocations(), path);
 	}
 
 	/**
@@ -150,18 +263,31 @@ public class InvertedIndex {
 	 * @return total word
 	 */
 	public int getTotalWords(String path) {
-		return locations.get(path) != null ? locations.get(path) : 0;
+		int document = documents.find(path);
+		return document >= 0 ? documents.getCount(document) : 0;
 	}
 
 	/**
-	 * Outputs the inverted index as pretty JSON to file
+	 * Outputs the inverted index as pretty JSON to file. An index without
+	 * positions writes the count of the word instead of the array of positions.
 	 * @param path output file location
 	 * @throws IOException
 	 * 
-	 * {@link TreeJSONWriter#asDoubleNestedObject(TreeMap, Path)}
+	 * {@link TreeJSONWriter#asDoubleNestedObject(TermTrie, List, DocumentTable, Path)}
 	 */
 	public void toIndexJSON(Path path) throws IOException {
-		TreeJSONWriter.asDoubleNestedObject(index, path);
+		TreeJSONWriter.asDoubleNestedObject(terms, index, documents, path);
+	}
+
+	/**
+	 * Convert the index into an immutable, array backed copy for searching.
+	 * 	call once the index is fully built, the copy does not see later changes
+	 * @return frozen copy of the index
+	 *
+	 * @see FrozenInvertedIndex
+	 */
+	public FrozenInvertedIndex freeze() {
+		return new FrozenInvertedIndex(terms, index, documents, positions);
 	}
 
 	/**
@@ -169,7 +295,7 @@ public class InvertedIndex {
 	 * @return true if the data structure is empty, false otherwise
 	 */
 	public boolean isEmpty() {
-		return index.isEmpty();
+		return terms.size() == 0;
 	}
 
 	/**
@@ -178,7 +304,14 @@ public class InvertedIndex {
 	 */
 	@Override
 	public String toString() {
-		return index.toString();
+		StringBuilder builder = new StringBuilder("{");
+		for(int ordinal: terms.getAll()) {
+			if(builder.length() > 1) {
+				builder.append(", ");
+			}
+			builder.append(terms.getTerm(ordinal)).append('=').append(index.get(ordinal));
+		}
+		return builder.append('}').toString();
 	}
 
 	/**
@@ -187,15 +320,11 @@ public class InvertedIndex {
 	 * @return a sorted array list
 	 */
 	public ArrayList<OneResult> partialSearch(TreeSet<String> oneLineQuery) {
-		HashMap<String, OneResult> result = new HashMap<String, OneResult>();
+		OneResult[] result = new OneResult[documents.size()];
 		ArrayList<OneResult> list = new ArrayList<>();
 		for(String oneQuery: oneLineQuery) {
-			for(String indexKey: index.tailMap(oneQuery).keySet()) {
-				if(indexKey.startsWith(oneQuery)) {
-					searchHelper(result, indexKey, list);
-				} else {
-					break;
-				}
+			for(int ordinal: terms.getPrefix(oneQuery)) {
+				searchHelper(result, index.get(ordinal), list);
 			}
 		}
 		Collections.sort(list);
@@ -208,10 +337,10 @@ public class InvertedIndex {
 	 * @return a sorted array list
 	 */
 	public ArrayList<OneResult> exactSearch(TreeSet<String> oneLineQuery) {
-		HashMap<String, OneResult> result = new HashMap<String, OneResult>();
+		OneResult[] result = new OneResult[documents.size()];
 		ArrayList<OneResult> list = new ArrayList<>();
 		for(String oneQuery: oneLineQuery) {
-			searchHelper(result, oneQuery, list);
+			searchHelper(result, getPostings(oneQuery), list);
 		}
 		Collections.sort(list);
 		return list;
@@ -220,19 +349,19 @@ public class InvertedIndex {
 
 	/**
 	 * Search helper method
-	 * @param result hashMap to store the OneResult
-	 * @param indexKey index word
+	 * @param result search result of each document, indexed by document id
+	 * @param postings postings of the index word, may be null
 	 * @param list returned array list
 	 */
-	private void searchHelper(HashMap<String, OneResult> result, String indexKey, ArrayList<OneResult> list) {
-		var pathTreeMap = index.get(indexKey);
-		if(pathTreeMap != null) {
-			for(String path: pathTreeMap.keySet()) {
-				if(result.containsKey(path)) {
-					result.get(path).updateCount(this.index.get(indexKey).get(path).size());
+	private void searchHelper(OneResult[] result, PostingList postings, ArrayList<OneResult> list) {
+		if(postings != null) {
+			for(int i = 0; i < postings.size(); i++) {
+				int document = postings.getDocument(i);
+				if(result[document] != null) {
+					result[document].updateCount(postings.getCount(i));
 				} else {
-					OneResult oneResult = new OneResult(path, this.locations.get(path), this.index.get(indexKey).get(path).size());
-					result.put(path, oneResult);
+					OneResult oneResult = new OneResult(documents, document, postings.getCount(i));
+					result[document] = oneResult;
 					list.add(oneResult);
 				}
 			}
@@ -241,24 +370,97 @@ public class InvertedIndex {
 
 	/**
 	 * Add a temporary inverted index to this index
-	 * @param temp inverted index
+	 * @param temp inverted index, keeping positions only if this index does
 	 */
 	public void addAll(InvertedIndex temp) {
-		for (String word : temp.index.keySet()) {
-			if (this.index.containsKey(word)) {
-				for(String path: temp.index.get(word).keySet()) {
-					if(this.index.get(word).containsKey(path)) {
-						this.index.get(word).get(path).addAll(temp.index.get(word).get(path));
-					} else {
-						this.index.get(word).put(path, temp.index.get(word).get(path));
-					}
-				}
-			} else {
-				this.index.put(word, temp.index.get(word));
-			}
+		int[] remap = new int[temp.documents.size()];
+		for(int i = 0; i < remap.length; i++) {
+			remap[i] = this.documents.add(temp.documents.getPath(i));
+			this.documents.setCount(remap[i], temp.documents.getCount(i));
+		}
+
+		for(int ordinal = 0; ordinal < temp.terms.size(); ordinal++) {
+			PostingList postings = temp.index.get(ordinal);
+			getOrCreatePostings(temp.terms.getTerm(ordinal), postings.size()).addAll(postings, remap);
+		}
+	}
+
+	/**
+	 * Add a later part of the same documents, the words of the part follow the
+	 * words already in this index
+	 * @param part inverted index of the part, its positions start at 1
+	 * @param offset number of words of the documents before the part
+	 *
+	 * @see PostingList#addAll(PostingList, int[], int)
+	 */
+	public void addAll(InvertedIndex part, int offset) {
+		int[] remap = new int[part.documents.size()];
+		for(int i = 0; i < remap.length; i++) {
+			remap[i] = this.documents.add(part.documents.getPath(i));
+			this.documents.setCount(remap[i], this.documents.getCount(remap[i]) + part.documents.getCount(i));
+		}
+
+		for(int ordinal = 0; ordinal < part.terms.size(); ordinal++) {
+			PostingList postings = part.index.get(ordinal);
+			getOrCreatePostings(part.terms.getTerm(ordinal), postings.size()).addAll(postings, remap, offset);
 		}
+	}
+
+	/**
+	 * Return the term dictionary, for merging this index into another index
+	 * @return the term dictionary
+	 */
+	TermTrie getDictionary() {
+		return terms;
+	}
 
-		this.locations.putAll(temp.locations);
+	/**
+	 * Return the postings of every term ordinal, for merging this index into another index
+	 * @return the postings of every term ordinal
+	 */
+	List<PostingList> getPostingLists() {
+		return index;
+	}
+
+	/**
+	 * Return the document table, for merging this index into another index
+	 * @return the document table
+	 */
+	DocumentTable getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * Return the postings of the given word
+	 * @param word index word
+	 * @return postings of the word, null if the word is not in the index
+	 */
+	private PostingList getPostings(String word) {
+		int ordinal = terms.get(word);
+		return ordinal >= 0 ? index.get(ordinal) : null;
+	}
+
+	/**
+	 * Return the postings of the given word, adding the word to the term
+	 * dictionary with empty postings if it is new
+	 * @param word index word
+	 * @param capacity the initial capacity of new postings
+	 * @return postings of the word
+	 */
+	private PostingList getOrCreatePostings(String word, int capacity) {
+		return index.get(intern(word, capacity));
+	}
+
+	/**
+	 * Return the ordinal of the given word, adding the word with empty
+	 * postings of the given capacity if it is new
+	 */
+	private int intern(String word, int capacity) {
+		int ordinal = terms.add(word);
+		if(ordinal == index.size()) {
+			index.add(new PostingList(capacity, positions));
+		}
+		return ordinal;
 	}
 
 	/**
@@ -270,15 +472,15 @@ public class InvertedIndex {
 	 * @return true if successfully add, false otherwise
 	 */
 	private boolean putIndexHelper(String word, String location, int position) {
-		index.putIfAbsent(word, new TreeMap<>());
-		index.get(word).putIfAbsent(location, new TreeSet<>());
-		incrementLocation(location);
-		return index.get(word).get(location).add(position);
+		int document = documents.add(location);
+		PostingList postings = getOrCreatePostings(word, 2);
+		documents.increment(document);
+		return postings.add(document, position);
 	}
 
 	public ArrayList<OneResult> exactSearch(String word) {
 		ArrayList<OneResult> list = new ArrayList<>();
-		searchHelper(word, list);
+		searchHelper(getPostings(word), list);
 
 
 		Collections.sort(list);
@@ -287,24 +489,18 @@ public class InvertedIndex {
 
 	public ArrayList<OneResult> partialSearch(String word) {
 		ArrayList<OneResult> list = new ArrayList<>();
-		for(String indexKey: index.tailMap(word).keySet()) {
-			if(indexKey.startsWith(word)) {
-				searchHelper(indexKey, list);
-			} else {
-				break;
-			}
+		for(int ordinal: terms.getPrefix(word)) {
+			searchHelper(index.get(ordinal), list);
 		}
 
 		Collections.sort(list);
 		return list;
 	}
 
-	private void searchHelper(String indexKey, ArrayList<OneResult> list) {
-		var pathTreeMap = index.get(indexKey);
-		if(pathTreeMap != null) {
-			for(String path: pathTreeMap.keySet()) {
-				OneResult oneResult = new OneResult(path, this.locations.get(path), this.index.get(indexKey).get(path).size());
-				list.add(oneResult);
+	private void searchHelper(PostingList postings, ArrayList<OneResult> list) {
+		if(postings != null) {
+			for(int i = 0; i < postings.size(); i++) {
+				list.add(new OneResult(documents, postings.getDocument(i), postings.getCount(i)));
 			}
 		}
 	}
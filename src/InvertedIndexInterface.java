@@ -0,0 +1,85 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.TreeSet;
+
+/**
+ * Read only operations of an inverted index, shared by the mutable
+ * {@link InvertedIndex} and its read optimized {@link FrozenInvertedIndex}
+ * @author Hao Shen
+ *
+ */
+public interface InvertedIndexInterface {
+
+	/**
+	 * Return whether the index contains a word
+	 * @param word key
+	 * @return true if the index contains the word, false otherwise
+	 */
+	public boolean containsWord(String word);
+
+	/**
+	 * Return the total word for given path
+	 * @param path key
+	 * @return total word
+	 */
+	public int getTotalWords(String path);
+
+	/**
+	 * Return true if the index is empty
+	 * @return true if the index is empty, false otherwise
+	 */
+	public boolean isEmpty();
+
+	/**
+	 * Return a view of the index that does not change while it is used, so
+	 * the searches of one query all see the same documents. Immutable indexes
+	 * return themselves.
+	 * @return a consistent read only view of the index
+	 */
+	public default InvertedIndexInterface snapshot() {
+		return this;
+	}
+
+	/**
+	 * Outputs the inverted index as pretty JSON to file
+	 * @param path output file location
+	 * @throws IOException
+	 */
+	public void toIndexJSON(Path path) throws IOException;
+
+	/**
+	 * Output the location map
+	 * @param path output file location
+	 * @throws IOException
+	 */
+	public void toLocationsJSON(Path path) throws IOException;
+
+	/**
+	 * Perform a partial search for one line of query
+	 * @param oneLineQuery a line of the query file
+	 * @return a sorted array list
+	 */
+	public ArrayList<OneResult> partialSearch(TreeSet<String> oneLineQuery);
+
+	/**
+	 * Perform a exact search for one line of query
+	 * @param oneLineQuery one line of query file
+	 * @return a sorted array list
+	 */
+	public ArrayList<OneResult> exactSearch(TreeSet<String> oneLineQuery);
+
+	/**
+	 * Perform a partial search for one word, listing the result of every matching word
+	 * @param word query word
+	 * @return a sorted array list
+	 */
+	public ArrayList<OneResult> partialSearch(String word);
+
+	/**
+	 * Perform a exact search for one word
+	 * @param word query word
+	 * @return a sorted array list
+	 */
+	public ArrayList<OneResult> exactSearch(String word);
+}
@@ -1,13 +1,14 @@
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 /**
  * InvertedMapBuilder class
@@ -27,17 +28,100 @@ public class InvertedMapBuilder {
 	 * @see Files#newDirectoryStream(Path)
 	 */
 	public static void buildMap(Path file, InvertedIndex index) throws IOException {
+		buildMap(file, index, PathFilter.ALL);
+	}
+
+	/**
+	 * Read through the given directory, adding the text files the filter accepts
+	 * @param file directory or file
+	 * @param index data structure
+	 * @param filter depth and globs of the files to read
+	 * @throws IOException
+	 */
+	public static void buildMap(Path file, InvertedIndex index, PathFilter filter) throws IOException {
+		buildMap(listFiles(file, filter), index);
+	}
+
+	/**
+	 * Add the given text files
+	 * @param files text files
+	 * @param index data structure
+	 * @throws IOException
+	 */
+	public static void buildMap(Collection<Path> files, InvertedIndex index) throws IOException {
+		//one ingester for every file, so each distinct word is stemmed once
+		FileIngester ingester = new FileIngester(index);
+		for(Path file: files) {
+			ingester.add(file);
+		}
+	}
+
+	/**
+	 * Add the given text files, putting every file read into the manifest.
+	 * A file that cannot be read is skipped and left out of the manifest, so
+	 * the index and the manifest always cover the same files.
+	 * @param files text files
+	 * @param index data structure
+	 * @param manifest receives the size, modified time and hash of every file read
+	 *
+	 * @see IndexManifest#update(Collection, List, java.util.Set)
+	 */
+	public static void buildMap(Collection<Path> files, InvertedIndex index, IndexManifest manifest) {
+		FileIngester ingester = new FileIngester(index);
+		for(Path file: files) {
+			try {
+				//before the read, a change during the read shows up next time
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				ingester.add(file);
+				manifest.put(file.toString(), new IndexManifest.Entry(attributes, ingester.getHash()));
+			} catch(IOException e) {
+				System.err.println("Unable to stem file: " + file.toString());
+			}
+		}
+	}
+
+	/**
+	 * Find the text files the filter accepts
+	 * @param file directory or file
+	 * @param filter depth and globs of the files to read
+	 * @return the text files, in the order of the directory listings
+	 * @throws IOException
+	 */
+	public static List<Path> listFiles(Path file, PathFilter filter) throws IOException {
+		ArrayList<Path> files = new ArrayList<Path>();
 		if(Files.isDirectory(file)) {
-			try(DirectoryStream<Path> list = Files.newDirectoryStream(file)) {
-				Iterator<Path> directoryStreamIt = list.iterator();
-				while(directoryStreamIt.hasNext()) {
-					buildMap(directoryStreamIt.next(), index);
+			listFiles(file, file, 0, filter, files);
+		} else if(filter.indexes(file, file)) {
+			files.add(file);
+		}
+		return files;
+	}
+
+	/**
+	 * Read through the given directory, finding the text files
+	 * @param root root of the tree
+	 * @param directory directory in the tree
+	 * @param depth depth of the directory, 0 for the root
+	 * @param filter depth and globs of the files to read
+	 * @param files receives the text files
+	 * @throws IOException
+	 */
+	private static void listFiles(Path root, Path directory, int depth, PathFilter filter, List<Path> files) throws IOException {
+		if(!filter.lists(depth)) {
+			return;
+		}
+		try(DirectoryStream<Path> list = Files.newDirectoryStream(directory)) {
+			Iterator<Path> directoryStreamIt = list.iterator();
+			while(directoryStreamIt.hasNext()) {
+				Path entry = directoryStreamIt.next();
+				if(filter.skips(root, entry, depth + 1)) {
+					continue;
+				}
+				if(Files.isDirectory(entry)) {
+					listFiles(root, entry, depth + 1, filter, files);
+				} else if(filter.indexes(root, entry)) {
+					files.add(entry);
 				}
-			}
-		} else { 
-			String fileName = file.toString().toLowerCase();
-			if(fileName.endsWith(".txt") || fileName.endsWith(".text")) {
-				stemFile(file, index);
 			}
 		}
 	}
@@ -49,22 +133,11 @@ public class InvertedMapBuilder {
 	 * @param index data structure
 	 * @throws IOException if unable to read the file 
 	 * 
-	 * @see #stemLine(String, Stemmer)
-	 * @see InvertedMap#put(String, String, int)
+	 * @see FileIngester#add(Path)
 	 * @see Stemmer#stem(CharSequence)
 	 */
 	public static void stemFile(Path inputFile, InvertedIndex index) throws IOException{
-		var stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
-		try(BufferedReader br = Files.newBufferedReader(inputFile, StandardCharsets.UTF_8)){
-			String line;
-			int start = 1;
-			while((line = br.readLine()) != null) {
-				String name = inputFile.toString();
-				for(String s: TextParser.parse(line)) {
-					index.putIndex(stemmer.stem(s).toString(), name, start++);
-				}
-			}
-		}
+		new FileIngester(index).add(inputFile);
 	}
 	
 	/**
@@ -74,7 +147,20 @@ public class InvertedMapBuilder {
 	 * @throws IOException
 	 */
 	public static InvertedIndex stemFile(Path inputFile) throws IOException {
-		InvertedIndex temp = new InvertedIndex();
+		return stemFile(inputFile, true);
+	}
+
+	/**
+	 * Take in a input file and return a inverted index
+	 * @param inputFile file
+	 * @param positions false to keep only the count of each word
+	 * @return inverted index
+	 * @throws IOException
+	 *
+	 * @see InvertedIndex#InvertedIndex(boolean)
+	 */
+	public static InvertedIndex stemFile(Path inputFile, boolean positions) throws IOException {
+		InvertedIndex temp = new InvertedIndex(positions);
 		stemFile(inputFile, temp);
 		return temp;
 	}
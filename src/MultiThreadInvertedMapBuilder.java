@@ -1,8 +1,17 @@
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Multi thread version of {@linkplain InvertedMapBuilder}
@@ -12,65 +21,291 @@ import java.util.Iterator;
  */
 public class MultiThreadInvertedMapBuilder {
 
+	/** Files of at least two chunks of this many bytes are parsed in parallel chunks. */
+	public static final long CHUNK_SIZE = 32L << 20;
+
 	/**
-	 * Initialize the work queue and wait all work to be finish
+	 * Initialize the work queue and wait all work to be finish. The inverted
+	 * indexes of the files are merged pairwise in parallel on the work queue,
+	 * and only the final index is added to the stripes of the index.
 	 * @param file the file we want to store in the data structure
-	 * @param index inverted index data structure
-	 * @param paraWq work queue
+	 * @param index striped inverted index
+	 * @param worker work queue
 	 * @throws IOException when buffered reader cannot read the file
-	 * @throws InterruptedException when encountered interrupted exception
+	 *
+	 * @see MergeTree
 	 */
-	public static void buildMap(Path file, ThreadSafeInvertedIndex index, WorkQueue worker) throws IOException {
-		buildMapHelper(file, index, worker);
-		worker.finish();
+	public static void buildMap(Path file, StripedInvertedIndex index, WorkQueue worker) throws IOException {
+		buildMap(file, index, worker, PathFilter.ALL);
 	}
-	
+
 	/**
-	 * Read through the given directory, find the file in the given directory and add the work to the work queue
+	 * Build the index of the text files the filter accepts into the stripes
+	 * @param file the file or directory we want to store in the data structure
+	 * @param index striped inverted index
+	 * @param worker work queue
+	 * @param filter depth and globs of the files to read
+	 * @throws IOException when unable to list the directory
+	 *
+	 * @see #buildMap(Path, StripedInvertedIndex, WorkQueue)
+	 */
+	public static void buildMap(Path file, StripedInvertedIndex index, WorkQueue worker, PathFilter filter) throws IOException {
+		buildMap(file, index, worker, filter, null);
+	}
+
+	/**
+	 * Build the index of the text files the filter accepts into the stripes,
+	 * putting every file read into the manifest
+	 * @param file the file or directory we want to store in the data structure
+	 * @param index striped inverted index
+	 * @param worker work queue
+	 * @param filter depth and globs of the files to read
+	 * @param manifest receives the size, modified time and hash of every file
+	 * 	read, null if none
+	 * @throws IOException when unable to list the directory
+	 *
+	 * @see #buildMap(Path, StripedInvertedIndex, WorkQueue, PathFilter)
+	 */
+	public static void buildMap(Path file, StripedInvertedIndex index, WorkQueue worker, PathFilter filter, IndexManifest manifest) throws IOException {
+		WorkQueue.TaskGroup group = worker.newGroup();
+		MergeTree tree = new MergeTree(group);
+		buildMapHelper(file, index.hasPositions(), tree, group, filter, manifest);
+		group.finish();
+		tree.publish(index);
+	}
+
+	/**
+	 * Stem the given text files in parallel, merging them pairwise before
+	 * adding them to the stripes of the index, and putting every file read
+	 * into the manifest. A file that cannot be read is skipped and left out
+	 * of the manifest.
+	 * @param files text files
+	 * @param index striped inverted index
+	 * @param worker work queue
+	 * @param manifest receives the size, modified time and hash of every file read
+	 *
+	 * @see InvertedMapBuilder#buildMap(Collection, InvertedIndex, IndexManifest)
+	 */
+	public static void buildMap(Collection<Path> files, StripedInvertedIndex index, WorkQueue worker, IndexManifest manifest) {
+		WorkQueue.TaskGroup group = worker.newGroup();
+		MergeTree tree = new MergeTree(group);
+		for(Path file: files) {
+			group.execute(new StemFileTask(file, index.hasPositions(), tree, group, manifest));
+		}
+		group.finish();
+		tree.publish(index);
+	}
+
+	/**
+	 * Read through the given directory, find the file in the given directory and add the work to the work queue.
+	 * The root is listed by the caller, every directory below it is listed by
+	 * its own task, so the first files are stemmed while the tree is still read.
 	 * @param file directory to be go through
-	 * @param index inverted index data structure
-	 * @throws IOException 
+	 * @param positions false to keep only the count of each word
+	 * @param target receives the inverted index of every file
+	 * @param group work of the caller on the work queue
+	 * @param filter depth and globs of the files to read
+	 * @param manifest receives the entry of every file read, null if none
+	 * @throws IOException when unable to list the root
 	 * 
-	 * @see {@link InvertedMapBuilder#buildMap(Path, ThreadSafeInvertedIndex)}
+	 * @see {@link InvertedMapBuilder#buildMap(Path, InvertedIndex, PathFilter)}
 	 */
-	private static void buildMapHelper(Path file, ThreadSafeInvertedIndex index, WorkQueue worker) throws IOException {
-		
+	private static void buildMapHelper(Path file, boolean positions, Consumer<InvertedIndex> target, WorkQueue.TaskGroup group, PathFilter filter, IndexManifest manifest) throws IOException {
+		Traversal traversal = new Traversal(file, filter, positions, target, group, manifest);
 		if(Files.isDirectory(file)) {
-			try(DirectoryStream<Path> list = Files.newDirectoryStream(file)) {
+			traversal.list(file, 0);
+		} else if(filter.indexes(file, file)) {
+			group.execute(new StemFileTask(file, positions, target, group, manifest));
+		}
+	}
+
+	/**
+	 * Traversal class
+	 * 	list the directories of one tree on the work queue. Listing is added as
+	 * 	blocking work, so a slow or network mounted disk does not hold the
+	 * 	workers stemming the files already found.
+	 * @author Hao Shen
+	 *
+	 * @see WorkQueue.TaskGroup#executeBlocking(Runnable)
+	 */
+	private static class Traversal {
+
+		private final Path root;
+		private final PathFilter filter;
+		private final boolean positions;
+		private final Consumer<InvertedIndex> target;
+		private final WorkQueue.TaskGroup group;
+		private final IndexManifest manifest;
+
+		public Traversal(Path root, PathFilter filter, boolean positions, Consumer<InvertedIndex> target, WorkQueue.TaskGroup group, IndexManifest manifest) {
+			this.root = root;
+			this.filter = filter;
+			this.positions = positions;
+			this.target = target;
+			this.group = group;
+			this.manifest = manifest;
+		}
+
+		/**
+		 * List the directory, adding a task for every text file and subdirectory
+		 * @param directory directory in the tree
+		 * @param depth depth of the directory, 0 for the root
+		 * @throws IOException when unable to list the directory
+		 */
+		public void list(Path directory, int depth) throws IOException {
+			if(!filter.lists(depth)) {
+				return;
+			}
+			try(DirectoryStream<Path> list = Files.newDirectoryStream(directory)) {
 				Iterator<Path> directoryStreamIt = list.iterator();
 				while(directoryStreamIt.hasNext()) {
-					buildMapHelper(directoryStreamIt.next(), index, worker);
+					Path entry = directoryStreamIt.next();
+					if(filter.skips(root, entry, depth + 1)) {
+						continue;
+					}
+					if(Files.isDirectory(entry)) {
+						group.executeBlocking(() -> listTask(entry, depth + 1));
+					} else if(filter.indexes(root, entry)) {
+						group.execute(new StemFileTask(entry, positions, target, group, manifest));
+					}
 				}
 			}
-		} else {
-			String fileName = file.toString().toLowerCase();
-			if(fileName.endsWith(".text") || fileName.endsWith(".txt")) {
-				worker.execute(new StemFileTask(file, index));
+		}
+
+		private void listTask(Path directory, int depth) {
+			try {
+				list(directory, depth);
+			} catch(IOException e) {
+				System.err.println("Unable to read the directory: " + directory.toString());
 			}
 		}
 	}
 	
+	/**
+	 * MergeTree class
+	 * 	combine inverted indexes pairwise like a binary counter: an index built
+	 * 	from 2^k files waits in slot k until another one arrives, then a merge
+	 * 	task on the work queue combines the two into one index of 2^(k+1)
+	 * 	files. Merges of different pairs run at the same time, and every file
+	 * 	is copied about log2(files) times into ever larger postings.
+	 * @author Hao Shen
+	 *
+	 */
+	private static class MergeTree implements Consumer<InvertedIndex> {
+
+		private final WorkQueue.TaskGroup group;
+		//slot k holds an index of 2^k files waiting for a partner
+		private final InvertedIndex[] slots;
+
+		public MergeTree(WorkQueue.TaskGroup group) {
+			this.group = group;
+			this.slots = new InvertedIndex[32];
+		}
+
+		/**
+		 * Add an inverted index of one file
+		 * @param index inverted index of the file
+		 */
+		@Override
+		public void accept(InvertedIndex index) {
+			offer(index, 0);
+		}
+
+		/**
+		 * Pair the index with the index waiting at its level, or wait there
+		 * @param index inverted index of 2^level files
+		 * @param level level of the index
+		 */
+		private void offer(InvertedIndex index, int level) {
+			InvertedIndex partner;
+			synchronized(slots) {
+				partner = slots[level];
+				slots[level] = partner == null ? index : null;
+			}
+			if(partner != null) {
+				group.execute(() -> offer(merge(partner, index), level + 1));
+			}
+		}
+
+		/**
+		 * Merge the remaining indexes and add the result to the index, once
+		 * all the work is finished, so the stripes are written once per build
+		 * @param index striped inverted index
+		 */
+		public void publish(StripedInvertedIndex index) {
+			InvertedIndex result = null;
+			synchronized(slots) {
+				for(int level = 0; level < slots.length; level++) {
+					if(slots[level] != null) {
+						result = result == null ? slots[level] : merge(slots[level], result);
+						slots[level] = null;
+					}
+				}
+			}
+			if(result != null) {
+				index.addAll(result);
+			}
+		}
+
+		/**
+		 * Merge the smaller index into the larger one
+		 * @param first inverted index
+		 * @param second inverted index
+		 * @return the merged index
+		 */
+		private static InvertedIndex merge(InvertedIndex first, InvertedIndex second) {
+			if(first.getDocuments().size() < second.getDocuments().size()) {
+				second.addAll(first);
+				return second;
+			}
+			first.addAll(second);
+			return first;
+		}
+	}
+
 	/**
 	 * StemFile class
-	 * 	stem the given file and add in the inverted index data structure
+	 * 	stem the given file into a temporary inverted index and hand it to the
+	 * 	target, a large file is split into chunks parsed in parallel
 	 * @author Hao Shen
 	 *
+	 * @see ChunkedFile
 	 */
 	private static class StemFileTask implements Runnable {
 
 		private final Path file;
-		private final ThreadSafeInvertedIndex index;
+		private final boolean positions;
+		private final Consumer<InvertedIndex> target;
+		private final WorkQueue.TaskGroup group;
+		//receives the entry of the file once read, null if none
+		private final IndexManifest manifest;
 		
-		public StemFileTask(Path file, ThreadSafeInvertedIndex index) {
+		public StemFileTask(Path file, boolean positions, Consumer<InvertedIndex> target, WorkQueue.TaskGroup group, IndexManifest manifest) {
 			this.file = file;
-			this.index = index;
+			this.positions = positions;
+			this.target = target;
+			this.group = group;
+			this.manifest = manifest;
 		}
 
 		@Override
 		public void run() {
 			try {
-				InvertedIndex temp = InvertedMapBuilder.stemFile(file);
-				index.addAll(temp);
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				if(attributes.size() >= 2 * CHUNK_SIZE) {
+					long[] starts = ChunkedFile.split(file);
+					if(starts != null) {
+						new ChunkedFile(file, starts, positions, target, manifest, attributes).execute(group);
+						return;
+					}
+				}
+				InvertedIndex temp = new InvertedIndex(positions);
+				FileIngester ingester = new FileIngester(temp);
+				ingester.add(file);
+				target.accept(temp);
+				if(manifest != null) {
+					manifest.put(file.toString(), new IndexManifest.Entry(attributes, ingester.getHash()));
+				}
 			} catch (IOException e1) {
 				System.err.println("Unable to stem file: " + file.toString());
 			}
@@ -78,4 +313,159 @@ public class MultiThreadInvertedMapBuilder {
 		
 	}
 
+	/**
+	 * ChunkedFile class
+	 * 	parse one large file in parallel. The file is split after line breaks
+	 * 	into chunks of about {@link #CHUNK_SIZE} bytes, so no line or UTF-8 char
+	 * 	is cut, and every chunk is memory mapped and parsed into its own index
+	 * 	by a task on the work queue. The last chunk to finish joins the chunks
+	 * 	in order, moving the positions of every chunk back by the number of
+	 * 	words before it, which gives the same index as parsing the whole file.
+	 * @author Hao Shen
+	 *
+	 * @see InvertedIndex#addAll(InvertedIndex, int)
+	 */
+	private static class ChunkedFile {
+
+		private final Path file;
+		private final boolean positions;
+		private final Consumer<InvertedIndex> target;
+		//chunk i is the bytes from starts[i] to starts[i+1]
+		private final long[] starts;
+		//index and hash of every chunk, null until parsed
+		private final InvertedIndex[] parts;
+		private final long[] hashes;
+		private final AtomicInteger remaining;
+		private volatile boolean failed;
+		//receives the entry of the file once joined, null if none
+		private final IndexManifest manifest;
+		private final BasicFileAttributes attributes;
+
+		public ChunkedFile(Path file, long[] starts, boolean positions, Consumer<InvertedIndex> target, IndexManifest manifest, BasicFileAttributes attributes) {
+			this.file = file;
+			this.positions = positions;
+			this.target = target;
+			this.starts = starts;
+			this.parts = new InvertedIndex[starts.length - 1];
+			this.hashes = new long[parts.length];
+			this.remaining = new AtomicInteger(parts.length);
+			this.failed = false;
+			this.manifest = manifest;
+			this.attributes = attributes;
+		}
+
+		/**
+		 * Find the chunks of the file, each one starting after a line break
+		 * @param file large file
+		 * @return start of every chunk followed by the size of the file, null
+		 * 	if a chunk would be too large to map
+		 * @throws IOException if unable to read the file
+		 */
+		public static long[] split(Path file) throws IOException {
+			ArrayList<Long> starts = new ArrayList<Long>();
+			try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				long size = channel.size();
+				ByteBuffer window = ByteBuffer.allocate(1 << 16);
+				long start = 0;
+				starts.add(start);
+				while(size - start >= 2 * CHUNK_SIZE) {
+					long next = nextLine(channel, start + CHUNK_SIZE, window);
+					if(next < 0 || next >= size) {
+						break;
+					}
+					starts.add(next);
+					start = next;
+				}
+				starts.add(size);
+			}
+
+			long[] result = new long[starts.size()];
+			for(int i = 0; i < result.length; i++) {
+				result[i] = starts.get(i);
+				if(i > 0 && result[i] - result[i-1] > Integer.MAX_VALUE) {
+					return null;
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Find the start of the line after the given position
+		 * @return position after the next line break, -1 if there is none
+		 */
+		private static long nextLine(FileChannel channel, long position, ByteBuffer window) throws IOException {
+			while(true) {
+				window.clear();
+				int read = channel.read(window, position);
+				if(read < 0) {
+					return -1;
+				}
+				for(int i = 0; i < read; i++) {
+					byte b = window.get(i);
+					//never part of a multi byte char
+					if(b == '\n' || b == '\r') {
+						return position + i + 1;
+					}
+				}
+				position += read;
+			}
+		}
+
+		/**
+		 * Parse every chunk on the work queue
+		 * @param group work of the caller on the work queue
+		 */
+		public void execute(WorkQueue.TaskGroup group) {
+			for(int i = 0; i < parts.length; i++) {
+				int chunk = i;
+				group.execute(() -> parse(chunk));
+			}
+		}
+
+		/**
+		 * Parse one chunk, joining all the chunks if it is the last one
+		 * @param chunk number of the chunk
+		 */
+		private void parse(int chunk) {
+			try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, starts[chunk], starts[chunk+1] - starts[chunk]);
+				InvertedIndex part = new InvertedIndex(positions);
+				FileIngester ingester = new FileIngester(part);
+				ingester.add(file.toString(), bytes);
+				hashes[chunk] = ingester.getHash();
+				parts[chunk] = part;
+			} catch(IOException | RuntimeException e) {
+				//the join skips the file, no chunk is left without an index
+				failed = true;
+			} finally {
+				if(remaining.decrementAndGet() == 0) {
+					join();
+				}
+			}
+		}
+
+		/**
+		 * Join the chunks in order and hand the index of the file to the target
+		 */
+		private void join() {
+			if(failed) {
+				System.err.println("Unable to stem file: " + file.toString());
+				return;
+			}
+			String location = file.toString();
+			InvertedIndex result = parts[0];
+			int offset = result.getTotalWords(location);
+			long hash = hashes[0];
+			for(int i = 1; i < parts.length; i++) {
+				result.addAll(parts[i], offset);
+				offset += parts[i].getTotalWords(location);
+				parts[i] = null;
+				hash = IndexManifest.combine(hash, hashes[i], starts[i+1] - starts[i]);
+			}
+			target.accept(result);
+			if(manifest != null) {
+				manifest.put(location, new IndexManifest.Entry(attributes, hash));
+			}
+		}
+	}
 }
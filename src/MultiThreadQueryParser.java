@@ -7,8 +7,6 @@ import java.util.ArrayList;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-
 /**
  * MultiThreadQueryParser class
  * perform a stem to the query file and add in a partial or exact search task to the work queue
@@ -23,13 +21,13 @@ public class MultiThreadQueryParser implements QueryParserInterface {
 	//key: one line of query file
 	//value: sorted array list
 	private final TreeMap<String, ArrayList<OneResult>> searchResult;
-	private final ThreadSafeInvertedIndex index;
+	private final InvertedIndexInterface index;
 	
 	/**
 	 * Constructor
 	 * 	initialize the data structure
 	 */
-	public MultiThreadQueryParser(WorkQueue wq, ThreadSafeInvertedIndex index) {
+	public MultiThreadQueryParser(WorkQueue wq, InvertedIndexInterface index) {
 		this.searchResult = new TreeMap<String, ArrayList<OneResult>>();
 		this.index = index;
 		this.worker = wq;
@@ -39,13 +37,14 @@ public class MultiThreadQueryParser implements QueryParserInterface {
 	 * {@inheritDoc}
 	 */
 	public void stemQuery(Path queryFile, boolean exact) throws IOException {
+		WorkQueue.TaskGroup group = worker.newGroup();
 		try(BufferedReader br = Files.newBufferedReader(queryFile, StandardCharsets.UTF_8)) {
 			String line;
 			while((line = br.readLine()) != null) {
-				worker.execute(new SearchTask(line, exact));
+				group.execute(new SearchTask(line, exact));
 			}
 		}
-		worker.finish();
+		group.finish();
 	}
 
 	/**
@@ -75,13 +74,13 @@ public class MultiThreadQueryParser implements QueryParserInterface {
 		@Override
 		public void run() {
 			TreeSet<String> oneLineQuery = new TreeSet<String>();
-			var stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
-			for(String s: TextParser.parse(line)) {
-				String word = stemmer.stem(s).toString();
+			StemCache stemmer = StemCache.getShared();
+			TextParser.tokenize(line, s -> {
+				String word = stemmer.stem(s);
 				if(!word.isEmpty()) {
 					oneLineQuery.add(word);
 				}
-			}
+			});
 
 			String queryLine = String.join(" ", oneLineQuery);
 
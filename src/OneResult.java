@@ -6,7 +6,8 @@
  */
 public class OneResult implements Comparable<OneResult>{
 	
-	private final String path;
+	private final DocumentTable documents;
+	private final int document;
 	private final int totalWords;
 	private int count;
 	private double score;
@@ -14,15 +15,16 @@ public class OneResult implements Comparable<OneResult>{
 	/**
 	 * Constructor
 	 * 	initialize one search result
-	 * @param path the path of the file which found the query word
-	 * @param totalWord how many word in that file
+	 * @param documents the document table the id belongs to
+	 * @param document the id of the file which found the query word
 	 * @param count how many times the query word being found in the file
 	 */
-	public OneResult(String path, int totalWord, int count) {
-		this.path = path;
-		this.totalWords = totalWord;
+	public OneResult(DocumentTable documents, int document, int count) {
+		this.documents = documents;
+		this.document = document;
+		this.totalWords = documents.getCount(document);
 		this.count = count;
-		this.score = (double) count/totalWord;
+		this.score = (double) count/totalWords;
 	}
 	
 	/**
@@ -37,10 +39,19 @@ public class OneResult implements Comparable<OneResult>{
 	
 	/**
 	 * Return the path for this search result
+	 * 	the path is only resolved from the document table when it is needed
 	 * @return String representation of the search result
 	 */
 	public String getPath() {
-		return this.path;
+		return this.documents.getPath(document);
+	}
+
+	/**
+	 * Return the document id for this search result
+	 * @return the id of the file in its document table
+	 */
+	public int getDocument() {
+		return this.document;
 	}
 
 	/**
@@ -65,7 +76,7 @@ public class OneResult implements Comparable<OneResult>{
 	 */
 	@Override
 	public int hashCode() {
-		return this.path.hashCode();
+		return this.getPath().hashCode();
 	}
 
 	/**
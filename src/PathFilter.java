@@ -0,0 +1,90 @@
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+
+/**
+ * PathFilter class
+ * 	decides which entries of a directory tree are read when building the
+ * 	index. The entries are checked by name first, so an excluded subtree or
+ * 	a file that can never be indexed is skipped without a stat or a listing.
+ *
+ * 	A glob without a '/' is matched against the name of the entry, any other
+ * 	glob against its path relative to the root, for example {@code *.txt}
+ * 	or {@code archive/**}.
+ * @author Hao Shen
+ *
+ * @see java.nio.file.FileSystem#getPathMatcher(String)
+ */
+public class PathFilter {
+
+	/** Reads the whole tree, every text file is indexed. */
+	public static final PathFilter ALL = new PathFilter(Integer.MAX_VALUE, null, null);
+
+	//deepest level listed, the root is at depth 0
+	private final int maxDepth;
+	//globs, null to include every text file or to exclude nothing
+	private final String include;
+	private final String exclude;
+	private final PathMatcher includeMatcher;
+	private final PathMatcher excludeMatcher;
+
+	/**
+	 * Initializes a filter
+	 * @param maxDepth deepest level read, 1 for only the files in the root
+	 * @param include glob of the files to index, null for every text file
+	 * @param exclude glob of the files and directories to skip, null for none
+	 */
+	public PathFilter(int maxDepth, String include, String exclude) {
+		this.maxDepth = maxDepth;
+		this.include = include;
+		this.exclude = exclude;
+		this.includeMatcher = include == null ? null : FileSystems.getDefault().getPathMatcher("glob:" + include);
+		this.excludeMatcher = exclude == null ? null : FileSystems.getDefault().getPathMatcher("glob:" + exclude);
+	}
+
+	/**
+	 * Check whether the directory at the depth is listed
+	 * @param depth depth of the directory, 0 for the root
+	 * @return true if the entries of the directory are read
+	 */
+	public boolean lists(int depth) {
+		return depth < maxDepth;
+	}
+
+	/**
+	 * Check whether an entry is skipped, using only its path
+	 * @param root root of the tree
+	 * @param entry file or directory in the tree
+	 * @param depth depth of the entry
+	 * @return true if neither the entry nor anything below it is read
+	 */
+	public boolean skips(Path root, Path entry, int depth) {
+		if(exclude != null && matches(excludeMatcher, exclude, root, entry)) {
+			return true;
+		}
+		//a file that could be indexed or a directory that could be listed
+		return !lists(depth) && !indexes(root, entry);
+	}
+
+	/**
+	 * Check whether a file is indexed, using only its path
+	 * @param root root of the tree
+	 * @param file file in the tree
+	 * @return true if the file is a text file matching the include glob
+	 */
+	public boolean indexes(Path root, Path file) {
+		String fileName = file.toString().toLowerCase();
+		if(!fileName.endsWith(".txt") && !fileName.endsWith(".text")) {
+			return false;
+		}
+		return include == null || file.equals(root) || matches(includeMatcher, include, root, file);
+	}
+
+	private static boolean matches(PathMatcher matcher, String glob, Path root, Path entry) {
+		if(glob.indexOf('/') < 0) {
+			Path name = entry.getFileName();
+			return name != null && matcher.matches(name);
+		}
+		return matcher.matches(root.relativize(entry));
+	}
+}
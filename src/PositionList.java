@@ -0,0 +1,302 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * PositionList class
+ * 	sorted list of the positions of one word in one file, stored as the gaps
+ * 	between positions in variable byte encoding. The number of positions is
+ * 	kept separately, so ranking reads the count without decoding anything and
+ * 	positions are only decoded when they are actually needed.
+ * @author Hao Shen
+ *
+ * @see VariableByte
+ */
+public class PositionList {
+
+	/** The initial capacity of a new position list. */
+	public static final int DEFAULT_CAPACITY = 4;
+
+	//gap encoded positions
+	private byte[] bytes;
+	private int length;
+	//number of positions and the last (largest) position
+	private int size;
+	private int last;
+
+	/**
+	 * Initializes an empty position list with the default capacity
+	 */
+	public PositionList() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Initializes an empty position list with the given capacity
+	 * @param capacity number of small gaps the list can hold before growing
+	 */
+	public PositionList(int capacity) {
+		this.bytes = new byte[Math.max(capacity, 1)];
+		this.length = 0;
+		this.size = 0;
+		this.last = 0;
+	}
+
+	/**
+	 * Add a position to the list. Positions are normally added in increasing
+	 * order, in which case only the gap to the last position is encoded and
+	 * appended; out of order positions decode and re-encode the list.
+	 * @param position the position of the word in the file, not negative
+	 * @return true if the position was added, false if it was already in the list
+	 */
+	public boolean add(int position) {
+		if(size == 0 || position > last) {
+			append(position - last);
+			last = position;
+			size++;
+			return true;
+		}
+
+		int[] positions = toArray();
+		int insert = Arrays.binarySearch(positions, position);
+		if(insert >= 0) {
+			return false;
+		}
+		insert = -(insert+1);
+		int[] inserted = new int[positions.length + 1];
+		System.arraycopy(positions, 0, inserted, 0, insert);
+		inserted[insert] = position;
+		System.arraycopy(positions, insert, inserted, insert+1, positions.length - insert);
+		encode(inserted, inserted.length);
+		return true;
+	}
+
+	/**
+	 * Merge all the positions of other list into this list, skipping duplicates
+	 * @param other position list to merge
+	 */
+	public void addAll(PositionList other) {
+		addAll(other, 0);
+	}
+
+	/**
+	 * Merge all the positions of other list into this list, moved back by the
+	 * offset, skipping duplicates
+	 * @param other position list to merge
+	 * @param offset number added to every position of the other list
+	 */
+	public void addAll(PositionList other, int offset) {
+		if(other.size == 0) {
+			return;
+		}
+
+		int first = other.iterator().nextInt();
+		int shifted = first + offset;
+		if(size == 0 || shifted > last) {
+			// the other list continues this one, only its first gap changes
+			append(shifted - last);
+			int start = VariableByte.length(first);
+			ensureCapacity(length + other.length - start);
+			System.arraycopy(other.bytes, start, bytes, length, other.length - start);
+			length += other.length - start;
+			size += other.size;
+			last = other.last + offset;
+			return;
+		}
+
+		int[] others = other.toArray();
+		for(int i = 0; i < others.length; i++) {
+			others[i] += offset;
+		}
+		int[] positions = toArray();
+		int[] merged = new int[positions.length + others.length];
+		int i = 0, j = 0, k = 0;
+		while(i < positions.length && j < others.length) {
+			if(positions[i] < others[j]) {
+				merged[k++] = positions[i++];
+			} else if(positions[i] > others[j]) {
+				merged[k++] = others[j++];
+			} else {
+				merged[k++] = positions[i++];
+				j++;
+			}
+		}
+		while(i < positions.length) {
+			merged[k++] = positions[i++];
+		}
+		while(j < others.length) {
+			merged[k++] = others[j++];
+		}
+		encode(merged, k);
+	}
+
+	/**
+	 * Check whether the list contains the given position
+	 * @param position the position of the word in the file
+	 * @return true if the position is in the list, false otherwise
+	 */
+	public boolean contains(int position) {
+		if(size == 0 || position > last) {
+			return false;
+		}
+		PrimitiveIterator.OfInt iterator = iterator();
+		while(iterator.hasNext()) {
+			int next = iterator.nextInt();
+			if(next >= position) {
+				return next == position;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Return the number of positions in the list, without decoding
+	 * @return number of positions
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return true if the list is empty
+	 * @return true if the list is empty, false otherwise
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Return the number of encoded bytes
+	 * @return number of bytes
+	 */
+	public int getByteLength() {
+		return length;
+	}
+
+	/**
+	 * Copy the encoded bytes into the given array
+	 * @param destination array to copy into
+	 * @param offset index of the first byte to write
+	 * @return index after the last byte written
+	 *
+	 * @see VariableByte#decode(byte[], int, int)
+	 */
+	public int copyTo(byte[] destination, int offset) {
+		System.arraycopy(bytes, 0, destination, offset, length);
+		return offset + length;
+	}
+
+	/**
+	 * Shrink the backing array to the number of encoded bytes
+	 */
+	public void trimToSize() {
+		if(bytes.length > length) {
+			bytes = Arrays.copyOf(bytes, Math.max(length, 1));
+		}
+	}
+
+	/**
+	 * Decode all the positions
+	 * @return sorted positions
+	 */
+	public int[] toArray() {
+		return VariableByte.decode(bytes, 0, size);
+	}
+
+	/**
+	 * Return an iterator that decodes the positions one at a time
+	 * @return iterator over the positions in increasing order
+	 */
+	public PrimitiveIterator.OfInt iterator() {
+		return new PrimitiveIterator.OfInt() {
+			private int offset = 0;
+			private int index = 0;
+			private int position = 0;
+
+			@Override
+			public boolean hasNext() {
+				return index < size;
+			}
+
+			@Override
+			public int nextInt() {
+				if(index >= size) {
+					throw new NoSuchElementException();
+				}
+				int value = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = bytes[offset++];
+					value |= (b & 0x7F) << shift;
+					shift += 7;
+				} while(b < 0);
+				index++;
+				position += value;
+				return position;
+			}
+		};
+	}
+
+	/**
+	 * Return a sorted set copy of the positions
+	 * @return SortedSet<Integer>
+	 *
+	 * @see Collections#unmodifiableSortedSet(SortedSet)
+	 */
+	public SortedSet<Integer> toSortedSet() {
+		TreeSet<Integer> result = new TreeSet<Integer>();
+		for(int position: toArray()) {
+			result.add(position);
+		}
+		return Collections.unmodifiableSortedSet(result);
+	}
+
+	/**
+	 * Append one encoded gap
+	 * @param gap difference to the last position
+	 */
+	private void append(int gap) {
+		ensureCapacity(length + VariableByte.length(gap));
+		length = VariableByte.write(gap, bytes, length);
+	}
+
+	/**
+	 * Replace the content of the list with the given sorted positions
+	 * @param positions sorted positions without duplicates
+	 * @param count number of positions to use
+	 */
+	private void encode(int[] positions, int count) {
+		this.length = 0;
+		this.size = 0;
+		this.last = 0;
+		for(int i = 0; i < count; i++) {
+			append(positions[i] - last);
+			last = positions[i];
+			size++;
+		}
+	}
+
+	/**
+	 * Grow the backing array by half until it can hold the given number of bytes
+	 * @param capacity the number of bytes the array must hold
+	 */
+	private void ensureCapacity(int capacity) {
+		if(capacity > bytes.length) {
+			int grow = bytes.length + (bytes.length >> 1) + 1;
+			bytes = Arrays.copyOf(bytes, Math.max(grow, capacity));
+		}
+	}
+
+	/**
+	 * Return a string representation of the positions
+	 * @return a string representation of the positions
+	 */
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
@@ -0,0 +1,283 @@
+import java.util.Arrays;
+
+/**
+ * PostingList class
+ * 	the documents one word was found in, sorted by document id, and the
+ * 	positions of the word in each of those documents. A list without
+ * 	positions only keeps how many times the word was found in each document.
+ * @author Hao Shen
+ *
+ * @see DocumentTable
+ * @see PositionList
+ */
+public class PostingList {
+
+	private int[] documents;
+	//null if the list keeps counts only
+	private PositionList[] positions;
+	//null if the list keeps positions
+	private int[] counts;
+	private int size;
+
+	/**
+	 * Initializes an empty posting list
+	 */
+	public PostingList() {
+		this(2);
+	}
+
+	/**
+	 * Initializes an empty posting list with the given capacity
+	 * @param capacity the number of documents the list can hold before growing
+	 */
+	public PostingList(int capacity) {
+		this(capacity, true);
+	}
+
+	/**
+	 * Initializes an empty posting list with the given capacity
+	 * @param capacity the number of documents the list can hold before growing
+	 * @param positional false to keep only the count of the word in each document
+	 */
+	public PostingList(int capacity, boolean positional) {
+		capacity = Math.max(capacity, 1);
+		this.documents = new int[capacity];
+		this.positions = positional ? new PositionList[capacity] : null;
+		this.counts = positional ? null : new int[capacity];
+		this.size = 0;
+	}
+
+	/**
+	 * Return true if the list keeps positions
+	 * @return true if the list keeps positions, false if it keeps counts only
+	 */
+	public boolean isPositional() {
+		return positions != null;
+	}
+
+	/**
+	 * Add the position of the word in the given document
+	 * @param document id of the document
+	 * @param position the position of the word in the document
+	 * @return true if the position was added, false if it already existed
+	 */
+	public boolean add(int document, int position) {
+		if(positions == null) {
+			int found = indexOf(document);
+			if(found < 0) {
+				found = -(found+1);
+				insert(found, document, null);
+			}
+			counts[found]++;
+			return true;
+		}
+		return getOrCreate(document).add(position);
+	}
+
+	/**
+	 * Add all the positions of the word in the given document at once
+	 * @param document id of the document
+	 * @param list positions of the word in that document, owned by this list
+	 * 	afterwards; only its size is used if this list keeps counts only
+	 */
+	public void addPositions(int document, PositionList list) {
+		int found = indexOf(document);
+		if(found < 0) {
+			found = -(found+1);
+			insert(found, document, list);
+			if(positions == null) {
+				counts[found] = list.size();
+			}
+		} else if(positions != null) {
+			positions[found].addAll(list);
+		} else {
+			counts[found] += list.size();
+		}
+	}
+
+	/**
+	 * Merge all the postings of other list into this list. Both lists must
+	 * keep positions, or both keep counts only, in which case the counts of a
+	 * document found in both lists are added.
+	 * @param other posting list to merge
+	 * @param remap the id in this index of every document id in the other index
+	 */
+	public void addAll(PostingList other, int[] remap) {
+		addAll(other, remap, 0);
+	}
+
+	/**
+	 * Merge all the postings of other list into this list, moving the
+	 * positions of the other list back by the offset
+	 * @param other posting list to merge
+	 * @param remap the id in this index of every document id in the other index
+	 * @param offset number added to every position of the other list
+	 *
+	 * @see PositionList#addAll(PositionList, int)
+	 */
+	public void addAll(PostingList other, int[] remap, int offset) {
+		if(isPositional() != other.isPositional()) {
+			throw new IllegalArgumentException("Cannot merge postings with and without positions");
+		}
+		for(int i = 0; i < other.size; i++) {
+			int document = remap[other.documents[i]];
+			int found = indexOf(document);
+			if(found < 0) {
+				found = -(found+1);
+				PositionList list = null;
+				if(positions != null && offset == 0) {
+					list = other.positions[i];
+				} else if(positions != null) {
+					list = new PositionList(other.positions[i].getByteLength() + VariableByte.length(offset));
+					list.addAll(other.positions[i], offset);
+				}
+				insert(found, document, list);
+				if(positions == null) {
+					counts[found] = other.counts[i];
+				}
+			} else if(positions != null) {
+				positions[found].addAll(other.positions[i], offset);
+			} else {
+				counts[found] += other.counts[i];
+			}
+		}
+	}
+
+	/**
+	 * Return the number of documents in the list
+	 * @return number of documents
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return the document id at the given index
+	 * @param index index in the list, from 0 to size-1
+	 * @return document id
+	 */
+	public int getDocument(int index) {
+		return documents[index];
+	}
+
+	/**
+	 * Return the positions at the given index
+	 * @param index index in the list, from 0 to size-1
+	 * @return positions of the word in that document, null if the list keeps counts only
+	 */
+	public PositionList getPositions(int index) {
+		return positions != null ? positions[index] : null;
+	}
+
+	/**
+	 * Return how many times the word was found in the document at the given index
+	 * @param index index in the list, from 0 to size-1
+	 * @return count of the word in that document
+	 */
+	public int getCount(int index) {
+		return positions != null ? positions[index].size() : counts[index];
+	}
+
+	/**
+	 * Return the positions for the given document id
+	 * @param document id of the document
+	 * @return positions of the word in that document, null if the word is not
+	 * 	in the document or the list keeps counts only
+	 */
+	public PositionList find(int document) {
+		int found = indexOf(document);
+		return found >= 0 && positions != null ? positions[found] : null;
+	}
+
+	/**
+	 * Return the count for the given document id
+	 * @param document id of the document
+	 * @return count of the word in that document, 0 if the word is not in the document
+	 */
+	public int findCount(int document) {
+		int found = indexOf(document);
+		return found >= 0 ? getCount(found) : 0;
+	}
+
+	/**
+	 * Return the positions for the given document id, adding an empty list if not found
+	 * @param document id of the document
+	 * @return positions of the word in that document
+	 */
+	private PositionList getOrCreate(int document) {
+		int found = indexOf(document);
+		if(found >= 0) {
+			return positions[found];
+		}
+		PositionList list = new PositionList();
+		insert(-(found+1), document, list);
+		return list;
+	}
+
+	/**
+	 * Find the index of the given document, checking the last document first
+	 * since documents are almost always added in increasing order
+	 * @param document id of the document
+	 * @return index of the document, or (-(insertion point) - 1) if not found
+	 *
+	 * @see Arrays#binarySearch(int[], int, int, int)
+	 */
+	private int indexOf(int document) {
+		if(size == 0 || document > documents[size-1]) {
+			return -(size+1);
+		}
+		if(document == documents[size-1]) {
+			return size-1;
+		}
+		return Arrays.binarySearch(documents, 0, size, document);
+	}
+
+	/**
+	 * Insert the document and its positions, or a zero count, at the given index
+	 * @param index sorted place of the document
+	 * @param document id of the document
+	 * @param list positions of the word in that document, ignored if the list keeps counts only
+	 */
+	private void insert(int index, int document, PositionList list) {
+		if(size == documents.length) {
+			int grow = size + (size >> 1) + 1;
+			documents = Arrays.copyOf(documents, grow);
+			if(positions != null) {
+				positions = Arrays.copyOf(positions, grow);
+			} else {
+				counts = Arrays.copyOf(counts, grow);
+			}
+		}
+		System.arraycopy(documents, index, documents, index+1, size-index);
+		documents[index] = document;
+		if(positions != null) {
+			System.arraycopy(positions, index, positions, index+1, size-index);
+			positions[index] = list;
+		} else {
+			System.arraycopy(counts, index, counts, index+1, size-index);
+			counts[index] = 0;
+		}
+		size++;
+	}
+
+	/**
+	 * Return a string representation of the postings, keyed by document id
+	 * @return a string representation of the postings
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("{");
+		for(int i = 0; i < size; i++) {
+			if(i > 0) {
+				builder.append(", ");
+			}
+			builder.append(documents[i]).append('=');
+			if(positions != null) {
+				builder.append(positions[i]);
+			} else {
+				builder.append(counts[i]);
+			}
+		}
+		return builder.append('}').toString();
+	}
+}
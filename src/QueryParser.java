@@ -14,7 +14,7 @@ import opennlp.tools.stemmer.snowball.SnowballStemmer;
  * 	perform a stem for the query file and a partial or exact search for the index passed in
  * @author Hao Shen
  * 
- * @see {@link InvertedIndex}
+ * @see {@link InvertedIndexInterface}
  * @see SnowballStemmer
  */
 public class QueryParser implements QueryParserInterface {
@@ -22,13 +22,13 @@ public class QueryParser implements QueryParserInterface {
 	//key: one line of query file
 	//value: sorted array list
 	private final TreeMap<String, ArrayList<OneResult>> searchResult;
-	private final InvertedIndex index;
+	private final InvertedIndexInterface index;
 
 	/**
 	 * Constructor
 	 * 	initialize the data structure
 	 */
-	public QueryParser(InvertedIndex index) {
+	public QueryParser(InvertedIndexInterface index) {
 		this.searchResult = new TreeMap<String, ArrayList<OneResult>>();
 		this.index = index;
 	}
@@ -38,17 +38,17 @@ public class QueryParser implements QueryParserInterface {
 	 */
 	@Override
 	public void stemQuery(Path queryFile, boolean exact) throws IOException {
-		SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		StemCache stemmer = StemCache.getShared();
 		try(BufferedReader br = Files.newBufferedReader(queryFile, StandardCharsets.UTF_8)) {
 			String line;
 			while((line = br.readLine()) != null) {
 				TreeSet<String> oneLineQuery = new TreeSet<String>();
-				for(String s: TextParser.parse(line)) {
-					String word = stemmer.stem(s).toString();
+				TextParser.tokenize(line, s -> {
+					String word = stemmer.stem(s);
 					if(!word.isEmpty()) {
 						oneLineQuery.add(word);
 					}
-				}
+				});
 
 				String queryLine = String.join(" ", oneLineQuery);
 				if(!searchResult.containsKey(queryLine)) {
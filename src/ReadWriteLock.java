@@ -1,75 +1,87 @@
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * A simple custom lock that allows simultaneously read operations, but
  * disallows simultaneously write and read/write operations.
  *
- * Does not implement any form or priority to read or write operations. The
- * first thread that acquires the appropriate lock should be allowed to
- * continue.
+ * Backed by a {@link ReentrantReadWriteLock}, so acquiring and releasing a
+ * read lock is a compare and swap instead of entering a shared monitor, and
+ * readers arriving while a writer waits queue behind it, so a steady stream of
+ * readers cannot starve writers.
+ *
+ * Short reads may also run without any lock: a version number is odd while a
+ * writer holds the lock and is bumped again when it is released, so a read
+ * that started and ended on the same even version did not overlap a write, see
+ * {@link #tryOptimisticRead()} and {@link #validate(long)}.
  */
 public class ReadWriteLock {
-	private int readers;
-	private int writers;
-	private static final Logger log = LogManager.getLogger();
-	
+	private final ReentrantReadWriteLock lock;
+	//even when no writer holds the lock, never 0
+	private final AtomicLong version;
+
 	/**
 	 * Initializes a multi-reader single-writer lock.
 	 */
 	public ReadWriteLock() {
-		readers = 0;
-		writers = 0;
+		lock = new ReentrantReadWriteLock();
+		version = new AtomicLong(2);
 	}
 
 	/**
-	 * Will wait until there are no active writers in the system, and then will
-	 * increase the number of active readers.
+	 * Will wait until there are no active or waiting writers in the system,
+	 * and then will increase the number of active readers.
 	 */
-	public synchronized void lockReadOnly() {
-		while(writers > 0) {
-			try {
-				this.wait();
-			} catch(InterruptedException e) {
-				log.error("lock read only exception", e);
-			}
-		}
-		readers++;
+	public void lockReadOnly() {
+		lock.readLock().lock();
 	}
 
 	/**
-	 * Will decrease the number of active readers, and notify any waiting
-	 * threads if necessary.
+	 * Will decrease the number of active readers, waking a waiting writer if
+	 * this was the last reader.
 	 */
-	public synchronized void unlockReadOnly() {
-		readers--;
-		if(readers == 0) {
-			notifyAll();
-		}
-		
+	public void unlockReadOnly() {
+		lock.readLock().unlock();
 	}
 
 	/**
 	 * Will wait until there are no active readers or writers in the system, and
 	 * then will increase the number of active writers.
 	 */
-	public synchronized void lockReadWrite() {
-		while(readers > 0 || writers > 0) {
-			try {
-				this.wait();
-			} catch(InterruptedException e) {
-				log.warn("read write exception", e);
-			}
-		}
-		writers++;
+	public void lockReadWrite() {
+		lock.writeLock().lock();
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Will decrease the number of active writers, and wake waiting threads.
+	 */
+	public void unlockReadWrite() {
+		version.incrementAndGet();
+		lock.writeLock().unlock();
+	}
+
+	/**
+	 * Start an optimistic read without locking.
+	 *
+	 * @return a stamp to validate after reading, 0 if a writer is active
+	 */
+	public long tryOptimisticRead() {
+		long stamp = version.get();
+		return (stamp & 1) == 0 ? stamp : 0;
 	}
 
 	/**
-	 * Will decrease the number of active writers, and notify any waiting
-	 * threads if necessary.
+	 * Check that no writer was active since the given optimistic stamp, in
+	 * which case the values read since then are consistent.
+	 *
+	 * @param stamp stamp returned by {@link #tryOptimisticRead()}
+	 * @return true if no write happened since the stamp was issued
 	 */
-	public synchronized void unlockReadWrite() {
-		writers--;
-		notifyAll();
+	public boolean validate(long stamp) {
+		// keep the reads of the index from moving after the version check
+		VarHandle.acquireFence();
+		return stamp != 0 && version.get() == stamp;
 	}
 }
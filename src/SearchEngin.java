@@ -12,12 +12,14 @@ import org.eclipse.jetty.servlet.ServletHolder;
  */
 public class SearchEngin {
 
-	private final ThreadSafeInvertedIndex threadSafe;
+	private final InvertedIndexInterface index;
 	private final int port;
 	private final WorkQueue worker;
+	//null until started
+	private Server server;
 
-	public SearchEngin(ThreadSafeInvertedIndex threadSafe, int port, WorkQueue worker) {
-		this.threadSafe = threadSafe;
+	public SearchEngin(InvertedIndexInterface index, int port, WorkQueue worker) {
+		this.index = index;
 		this.port = port;
 		this.worker = worker;
 	}
@@ -27,11 +29,20 @@ public class SearchEngin {
 	 * @throws Exception
 	 */
 	public void startServlet() throws Exception {
-		Server server = new Server(port);
+		start();
+		join();
+	}
+
+	/**
+	 * Initialize the servlet and start the server without waiting for it
+	 * @throws Exception if unable to start the server
+	 */
+	public void start() throws Exception {
+		server = new Server(port);
 		ServletContextHandler context = new ServletContextHandler();
 		
 		context.setContextPath("/");
-		context.addServlet(new ServletHolder(new index(threadSafe, worker)), "/");
+		context.addServlet(new ServletHolder(new index(index, worker)), "/");
 		
 		ServletContextHandler historyContext = new ServletContextHandler();
 		
@@ -43,6 +54,13 @@ public class SearchEngin {
 		
 		server.setHandler(handlers);
 		server.start();
+	}
+
+	/**
+	 * Wait for the started server to stop
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void join() throws InterruptedException {
 		server.join();
 	}
 }
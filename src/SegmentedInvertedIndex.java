@@ -0,0 +1,451 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Inverted index made of immutable segments, for incremental ingest.
+ * 	every added batch of documents is frozen into its own
+ * 	{@link FrozenInvertedIndex} segment, searches fan out over the segments
+ * 	and combine the results, and a background merger compacts the smallest
+ * 	segments into larger ones once there are too many of them.
+ *
+ * 	The segments are published as a copy on write array, so readers never
+ * 	lock and adding a segment never waits for a search or a merge. Segments
+ * 	are expected to hold different documents, see
+ * 	{@link FrozenInvertedIndex#merge(List)} for what happens otherwise.
+ * @author Hao Shen
+ *
+ */
+public class SegmentedInvertedIndex implements InvertedIndexInterface {
+
+	/** The default number of segments allowed before merging. */
+	public static final int DEFAULT_MERGE_FACTOR = 10;
+
+	private static final Logger log = LogManager.getLogger();
+
+	//current segments, replaced as a whole under the lock of this index
+	private volatile FrozenInvertedIndex[] segments;
+	//false to keep only the count of each word in each document
+	private final boolean positions;
+	//maximum number of segments before the smallest ones are merged
+	private final int mergeFactor;
+	private final Merger merger;
+
+	private boolean merging;
+	private volatile boolean shutdown;
+
+	/**
+	 * Initializes an empty index keeping positions, with the default merge factor
+	 */
+	public SegmentedInvertedIndex() {
+		this(true, DEFAULT_MERGE_FACTOR);
+	}
+
+	/**
+	 * Initializes an empty index and starts its background merger
+	 * @param positions false to keep only the count of each word in each document
+	 * @param mergeFactor number of segments allowed before the smallest ones are merged, at least 2
+	 */
+	public SegmentedInvertedIndex(boolean positions, int mergeFactor) {
+		this.segments = new FrozenInvertedIndex[0];
+		this.positions = positions;
+		this.mergeFactor = Math.max(mergeFactor, 2);
+		this.merging = false;
+		this.shutdown = false;
+		this.merger = new Merger();
+		this.merger.start();
+	}
+
+	/**
+	 * Return true if the index keeps the positions of the words
+	 * @return true if the index keeps positions, false if it keeps counts only
+	 */
+	public boolean hasPositions() {
+		return positions;
+	}
+
+	/**
+	 * Return the current number of segments
+	 * @return number of segments
+	 */
+	public int getSegmentCount() {
+		return segments.length;
+	}
+
+	/**
+	 * Freeze a batch of documents and add it as a new segment
+	 * @param batch inverted index of the new documents, not used afterwards
+	 *
+	 * @see InvertedIndex#freeze()
+	 */
+	public void addSegment(InvertedIndex batch) {
+		if(!batch.isEmpty()) {
+			addSegment(batch.freeze());
+		}
+	}
+
+	/**
+	 * Add a frozen segment
+	 * @param segment frozen index of the new documents
+	 * @throws IllegalArgumentException if the segment does not keep positions like this index
+	 */
+	public void addSegment(FrozenInvertedIndex segment) {
+		if(segment.hasPositions() != positions) {
+			throw new IllegalArgumentException("Cannot add a segment with" + (positions ? "out" : "") + " positions");
+		}
+		synchronized(this) {
+			FrozenInvertedIndex[] next = Arrays.copyOf(segments, segments.length + 1);
+			next[segments.length] = segment;
+			segments = next;
+			if(next.length > mergeFactor) {
+				this.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits until the background merger has nothing left to merge
+	 */
+	public void awaitMerges() {
+		synchronized(this) {
+			try {
+				while(merging || (segments.length > mergeFactor && !shutdown)) {
+					this.wait();
+				}
+			} catch(InterruptedException e) {
+				log.warn("Warning: interrupted while waiting for merges.", e);
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Merge all the segments into one frozen index, which also becomes the
+	 * only segment of this index. Segments added meanwhile are kept.
+	 * @return frozen copy of the whole index
+	 */
+	public FrozenInvertedIndex freeze() {
+		while(true) {
+			awaitMerges();
+			FrozenInvertedIndex[] snapshot = segments;
+			if(snapshot.length == 0) {
+				return new InvertedIndex(positions).freeze();
+			}
+			if(snapshot.length == 1) {
+				return snapshot[0];
+			}
+			FrozenInvertedIndex merged = FrozenInvertedIndex.merge(Arrays.asList(snapshot));
+			// the merger may have replaced some of the segments meanwhile
+			if(replace(snapshot, merged)) {
+				return merged;
+			}
+		}
+	}
+
+	/**
+	 * Stop the background merger. Merges in progress are finished, searching
+	 * and adding segments keep working without merging.
+	 */
+	public void shutdown() {
+		synchronized(this) {
+			shutdown = true;
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * Return the segments published at the time of the call. Adding segments
+	 * and merges publish new arrays and never change published ones, so the
+	 * snapshot can be searched without locking while the index keeps changing.
+	 * @return immutable view of the current segments
+	 */
+	@Override
+	public InvertedIndexInterface snapshot() {
+		return new Snapshot(segments);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean containsWord(String word) {
+		return snapshot().containsWord(word);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getTotalWords(String path) {
+		return snapshot().getTotalWords(path);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isEmpty() {
+		return snapshot().isEmpty();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see FrozenInvertedIndex#merge(List)
+	 */
+	@Override
+	public void toIndexJSON(Path path) throws IOException {
+		snapshot().toIndexJSON(path);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see DocumentTable#toLocations()
+	 */
+	@Override
+	public void toLocationsJSON(Path path) throws IOException {
+		snapshot().toLocationsJSON(path);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ArrayList<OneResult> partialSearch(TreeSet<String> oneLineQuery) {
+		return snapshot().partialSearch(oneLineQuery);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ArrayList<OneResult> exactSearch(TreeSet<String> oneLineQuery) {
+		return snapshot().exactSearch(oneLineQuery);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ArrayList<OneResult> partialSearch(String word) {
+		return snapshot().partialSearch(word);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ArrayList<OneResult> exactSearch(String word) {
+		return snapshot().exactSearch(word);
+	}
+
+	/**
+	 * Replace the given segments by their merged segment, keeping the segments
+	 * added since the given segments were read
+	 * @param merged segments that were merged
+	 * @param result merged segment
+	 * @return true if replaced, false if some of the segments are already gone
+	 */
+	private synchronized boolean replace(FrozenInvertedIndex[] merged, FrozenInvertedIndex result) {
+		List<FrozenInvertedIndex> current = Arrays.asList(segments);
+		for(FrozenInvertedIndex segment: merged) {
+			if(!current.contains(segment)) {
+				return false;
+			}
+		}
+		List<FrozenInvertedIndex> removed = Arrays.asList(merged);
+		ArrayList<FrozenInvertedIndex> next = new ArrayList<FrozenInvertedIndex>(segments.length);
+		next.add(result);
+		for(FrozenInvertedIndex segment: segments) {
+			if(!removed.contains(segment)) {
+				next.add(segment);
+			}
+		}
+		segments = next.toArray(new FrozenInvertedIndex[0]);
+		return true;
+	}
+
+	/**
+	 * Return the smallest segments to merge, or null if there are not too many segments
+	 * @return the segments to merge
+	 */
+	private FrozenInvertedIndex[] pickMerge() {
+		FrozenInvertedIndex[] snapshot = segments;
+		if(snapshot.length <= mergeFactor) {
+			return null;
+		}
+		FrozenInvertedIndex[] sorted = snapshot.clone();
+		Arrays.sort(sorted, (a, b) -> Integer.compare(a.getPostingCount(), b.getPostingCount()));
+		return Arrays.copyOf(sorted, mergeFactor);
+	}
+
+	/**
+	 * Snapshot class
+	 * 	read only view of the segments published at one point in time. The
+	 * 	array is never written after it is published, so searches on a
+	 * 	snapshot never wait for writers and all see the same documents.
+	 * @author Hao Shen
+	 *
+	 */
+	private static class Snapshot implements InvertedIndexInterface {
+
+		private final FrozenInvertedIndex[] segments;
+
+		public Snapshot(FrozenInvertedIndex[] segments) {
+			this.segments = segments;
+		}
+
+		@Override
+		public boolean containsWord(String word) {
+			for(FrozenInvertedIndex segment: segments) {
+				if(segment.containsWord(word)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public int getTotalWords(String path) {
+			for(int i = segments.length - 1; i >= 0; i--) {
+				if(segments[i].getDocuments().find(path) >= 0) {
+					return segments[i].getTotalWords(path);
+				}
+			}
+			return 0;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			for(FrozenInvertedIndex segment: segments) {
+				if(!segment.isEmpty()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void toIndexJSON(Path path) throws IOException {
+			FrozenInvertedIndex whole = segments.length == 1 ? segments[0] : FrozenInvertedIndex.merge(Arrays.asList(segments));
+			whole.toIndexJSON(path);
+		}
+
+		@Override
+		public void toLocationsJSON(Path path) throws IOException {
+			TreeMap<String, Integer> locations = new TreeMap<String, Integer>();
+			for(FrozenInvertedIndex segment: segments) {
+				locations.putAll(segment.getDocuments().toLocations());
+			}
+			TreeJSONWriter.asObject(locations, path);
+		}
+
+		@Override
+		public ArrayList<OneResult> partialSearch(TreeSet<String> oneLineQuery) {
+			ArrayList<OneResult> list = new ArrayList<>();
+			for(FrozenInvertedIndex segment: segments) {
+				list.addAll(segment.partialSearch(oneLineQuery));
+			}
+			return combine(list);
+		}
+
+		@Override
+		public ArrayList<OneResult> exactSearch(TreeSet<String> oneLineQuery) {
+			ArrayList<OneResult> list = new ArrayList<>();
+			for(FrozenInvertedIndex segment: segments) {
+				list.addAll(segment.exactSearch(oneLineQuery));
+			}
+			return combine(list);
+		}
+
+		@Override
+		public ArrayList<OneResult> partialSearch(String word) {
+			ArrayList<OneResult> list = new ArrayList<>();
+			for(FrozenInvertedIndex segment: segments) {
+				list.addAll(segment.partialSearch(word));
+			}
+			return combine(list);
+		}
+
+		@Override
+		public ArrayList<OneResult> exactSearch(String word) {
+			ArrayList<OneResult> list = new ArrayList<>();
+			for(FrozenInvertedIndex segment: segments) {
+				list.addAll(segment.exactSearch(word));
+			}
+			return combine(list);
+		}
+
+		/**
+		 * Sort the concatenated results of the segments. Every segment result is
+		 * already sorted, so the sort only merges the sorted runs.
+		 * @param list results of all the segments
+		 * @return the sorted list
+		 */
+		private static ArrayList<OneResult> combine(ArrayList<OneResult> list) {
+			Collections.sort(list);
+			return list;
+		}
+	}
+
+	/**
+	 * Waits in the background until there are too many segments, then merges
+	 * the smallest ones into one segment. Searches keep using the old segments
+	 * until the merged segment replaces them.
+	 */
+	private class Merger extends Thread {
+
+		/**
+		 * Initializes the merger as a daemon thread
+		 */
+		public Merger() {
+			super("segment-merger");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while(true) {
+				FrozenInvertedIndex[] picked;
+				synchronized(SegmentedInvertedIndex.this) {
+					while((picked = pickMerge()) == null && !shutdown) {
+						try {
+							SegmentedInvertedIndex.this.wait();
+						} catch(InterruptedException ex) {
+							log.warn("Warning: segment merger interrupted.", ex);
+							Thread.currentThread().interrupt();
+							return;
+						}
+					}
+					if(shutdown) {
+						SegmentedInvertedIndex.this.notifyAll();
+						return;
+					}
+					merging = true;
+				}
+
+				try {
+					replace(picked, FrozenInvertedIndex.merge(Arrays.asList(picked)));
+				} catch(RuntimeException ex) {
+					// keep the segments as they are rather than losing them, and stop merging
+					log.warn("Warning: segment merger encountered an exception while merging.", ex);
+					shutdown = true;
+				} finally {
+					synchronized(SegmentedInvertedIndex.this) {
+						merging = false;
+						SegmentedInvertedIndex.this.notifyAll();
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,168 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+
+/**
+ * Thread safe memoizing English stemmer, shared by the builders, the crawler
+ * and the query parsers instead of stemming every word again.
+ * 	words are cached in two generations: new words go into the current
+ * 	generation, and once it holds half the capacity it becomes the previous
+ * 	generation and the old previous one is dropped. A word found in the
+ * 	previous generation moves back to the current one, so frequent words
+ * 	survive and the cache holds about the capacity at most. Lookups never
+ * 	lock, and the misses are stemmed by one {@link SnowballStemmer} per thread.
+ *
+ * 	Stemming the same word always gives an equal word, so the cache also
+ * 	shares one string per stem between the documents.
+ * @author Hao Shen
+ *
+ */
+public class StemCache implements Stemmer {
+
+	/** The default maximum number of cached words. */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	private static final StemCache SHARED = new StemCache(DEFAULT_CAPACITY);
+
+	//words per generation
+	private final int generationSize;
+	private volatile ConcurrentHashMap<String, String> current;
+	private volatile ConcurrentHashMap<String, String> previous;
+	//the snowball stemmer keeps state between calls, so one per thread
+	private final ThreadLocal<SnowballStemmer> stemmers;
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder missNanos;
+	private final LongAdder evictions;
+
+	/**
+	 * Initializes an empty cache
+	 * @param capacity maximum number of cached words, at least 2
+	 */
+	public StemCache(int capacity) {
+		this.generationSize = Math.max(capacity / 2, 1);
+		this.current = new ConcurrentHashMap<String, String>();
+		this.previous = new ConcurrentHashMap<String, String>();
+		this.stemmers = ThreadLocal.withInitial(() -> new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH));
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.missNanos = new LongAdder();
+		this.evictions = new LongAdder();
+	}
+
+	/**
+	 * Return the cache shared by the whole program
+	 * @return the shared stem cache
+	 */
+	public static StemCache getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Stem a word, from the cache if it was stemmed before
+	 * @param word word to stem
+	 * @return the stem of the word
+	 */
+	public String stem(String word) {
+		ConcurrentHashMap<String, String> generation = current;
+		String stem = generation.get(word);
+		if(stem != null) {
+			hits.increment();
+			return stem;
+		}
+		stem = previous.get(word);
+		if(stem != null) {
+			hits.increment();
+		} else {
+			long start = System.nanoTime();
+			stem = stemmers.get().stem(word).toString();
+			missNanos.add(System.nanoTime() - start);
+			misses.increment();
+		}
+		generation.put(word, stem);
+		if(generation.size() >= generationSize) {
+			rotate(generation);
+		}
+		return stem;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public CharSequence stem(CharSequence word) {
+		return stem(word.toString());
+	}
+
+	/**
+	 * Make the full generation the previous one and start a new one, unless
+	 * another thread already did
+	 * @param full the generation that reached its size
+	 */
+	private synchronized void rotate(ConcurrentHashMap<String, String> full) {
+		if(current == full) {
+			evictions.add(previous.size());
+			previous = full;
+			current = new ConcurrentHashMap<String, String>();
+		}
+	}
+
+	/**
+	 * Return the number of words looked up
+	 * @return number of lookups
+	 */
+	public long getLookups() {
+		return hits.sum() + misses.sum();
+	}
+
+	/**
+	 * Return the fraction of the lookups found in the cache
+	 * @return hit rate between 0 and 1, 0 if nothing was looked up
+	 */
+	public double getHitRate() {
+		long lookups = getLookups();
+		return lookups == 0 ? 0 : (double) hits.sum() / lookups;
+	}
+
+	/**
+	 * Return the number of words stemmed because they were not cached
+	 * @return number of misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Return the average time spent stemming a word that was not cached
+	 * @return average nanoseconds per miss
+	 */
+	public double getAverageMissNanos() {
+		long count = misses.sum();
+		return count == 0 ? 0 : (double) missNanos.sum() / count;
+	}
+
+	/**
+	 * Return the number of words dropped from the cache
+	 * @return number of evicted words
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Return the number of words currently cached
+	 * @return size of the cache
+	 */
+	public int size() {
+		return current.size() + previous.size();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Stem cache: %d lookups, %.1f%% hits, %d misses at %.0f ns, %d cached, %d evicted",
+				getLookups(), getHitRate() * 100, getMisses(), getAverageMissNanos(), size(), getEvictions());
+	}
+}
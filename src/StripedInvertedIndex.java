@@ -0,0 +1,482 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Inverted index for parallel ingestion. The words are split by hash into
+ * stripes, each with its own term dictionary, postings and lock, so merges
+ * of different words run at the same time and a writer only blocks the
+ * readers of the stripe it is writing. The document table is shared and
+ * locked on its own, only while the documents of a merge are registered.
+ *
+ * Lock order: the document lock before any stripe lock, and stripes in
+ * increasing order. Writers hold at most one lock at a time.
+ * @author Hao Shen
+ *
+ */
+public class StripedInvertedIndex implements InvertedIndexInterface {
+
+	/** The default number of stripes, a power of two. */
+	public static final int DEFAULT_STRIPES = 64;
+
+	//word hash -> stripe
+	private final Stripe[] stripes;
+	//document id <-> path, total word
+	private final DocumentTable documents;
+	private final ReadWriteLock documentLock;
+	//false to keep only the count of each word in each document
+	private final boolean positions;
+
+	/**
+	 * Initializes an empty index keeping positions, with the default number of stripes
+	 */
+	public StripedInvertedIndex() {
+		this(true, DEFAULT_STRIPES);
+	}
+
+	/**
+	 * Initializes an empty index
+	 * @param positions false to keep only the count of each word in each document
+	 * @param stripes number of stripes, rounded up to a power of two
+	 */
+	public StripedInvertedIndex(boolean positions, int stripes) {
+		int size = Integer.highestOneBit(Math.max(stripes, 1) * 2 - 1);
+		this.stripes = new Stripe[size];
+		for(int i = 0; i < size; i++) {
+			this.stripes[i] = new Stripe();
+		}
+		this.documents = new DocumentTable();
+		this.documentLock = new ReadWriteLock();
+		this.positions = positions;
+	}
+
+	/**
+	 * Return true if the index keeps the positions of the words
+	 * @return true if the index keeps positions, false if it keeps counts only
+	 */
+	public boolean hasPositions() {
+		return positions;
+	}
+
+	/**
+	 * Add a temporary inverted index to this index. The words are grouped by
+	 * stripe first, then every stripe is locked once for all of its words,
+	 * starting from a random stripe so concurrent merges do not queue up behind
+	 * each other on the same stripes.
+	 * @param temp inverted index, keeping positions only if this index does
+	 *
+	 * @see InvertedIndex#addAll(InvertedIndex)
+	 */
+	public void addAll(InvertedIndex temp) {
+		DocumentTable tempDocuments = temp.getDocuments();
+		int[] remap = new int[tempDocuments.size()];
+		documentLock.lockReadWrite();
+		try {
+			for(int i = 0; i < remap.length; i++) {
+				remap[i] = documents.add(tempDocuments.getPath(i));
+				documents.setCount(remap[i], tempDocuments.getCount(i));
+			}
+		} finally {
+			documentLock.unlockReadWrite();
+		}
+
+		TermTrie tempTerms = temp.getDictionary();
+		List<PostingList> tempPostings = temp.getPostingLists();
+		String[] words = new String[tempTerms.size()];
+		int[] stripeOf = new int[words.length];
+		for(int ordinal = 0; ordinal < words.length; ordinal++) {
+			words[ordinal] = tempTerms.getTerm(ordinal);
+			stripeOf[ordinal] = stripeOf(words[ordinal]);
+		}
+		int[][] groups = group(stripeOf);
+
+		int first = ThreadLocalRandom.current().nextInt(stripes.length);
+		for(int k = 0; k < stripes.length; k++) {
+			int s = (first + k) & (stripes.length - 1);
+			if(groups[s].length == 0) {
+				continue;
+			}
+			Stripe stripe = stripes[s];
+			stripe.lock.lockReadWrite();
+			try {
+				for(int ordinal: groups[s]) {
+					PostingList postings = tempPostings.get(ordinal);
+					stripe.getOrCreatePostings(words[ordinal], postings.size()).addAll(postings, remap);
+				}
+			} finally {
+				stripe.lock.unlockReadWrite();
+			}
+		}
+	}
+
+	/**
+	 * Put all the words of one document at once, starting at position 1
+	 * @param location the path of the file
+	 * @param words the words of the document in order
+	 *
+	 * @see InvertedIndex#putDocument(String, List)
+	 */
+	public void putDocument(String location, List<String> words) {
+		if(words.isEmpty()) {
+			return;
+		}
+		HashMap<String, PositionList> grouped = InvertedIndex.collect(words, 1);
+
+		int document;
+		documentLock.lockReadWrite();
+		try {
+			document = documents.add(location);
+			documents.setCount(document, documents.getCount(document) + words.size());
+		} finally {
+			documentLock.unlockReadWrite();
+		}
+
+		ArrayList<ArrayList<Map.Entry<String, PositionList>>> groups = new ArrayList<>(stripes.length);
+		for(int s = 0; s < stripes.length; s++) {
+			groups.add(new ArrayList<>());
+		}
+		for(Map.Entry<String, PositionList> entry: grouped.entrySet()) {
+			groups.get(stripeOf(entry.getKey())).add(entry);
+		}
+
+		int first = ThreadLocalRandom.current().nextInt(stripes.length);
+		for(int k = 0; k < stripes.length; k++) {
+			int s = (first + k) & (stripes.length - 1);
+			if(groups.get(s).isEmpty()) {
+				continue;
+			}
+			Stripe stripe = stripes[s];
+			stripe.lock.lockReadWrite();
+			try {
+				for(Map.Entry<String, PositionList> entry: groups.get(s)) {
+					stripe.getOrCreatePostings(entry.getKey(), 2).addPositions(document, entry.getValue());
+				}
+			} finally {
+				stripe.lock.unlockReadWrite();
+			}
+		}
+	}
+
+	/**
+	 * Convert the index into an immutable, array backed copy for searching.
+	 * 	the copy does not see later changes
+	 * @return frozen copy of the index
+	 *
+	 * @see FrozenInvertedIndex
+	 */
+	public FrozenInvertedIndex freeze() {
+		documentLock.lockReadOnly();
+		try {
+			for(Stripe stripe: stripes) {
+				stripe.lock.lockReadOnly();
+			}
+			try {
+				ArrayList<TermTrie> dictionaries = new ArrayList<TermTrie>(stripes.length);
+				ArrayList<List<PostingList>> postings = new ArrayList<List<PostingList>>(stripes.length);
+				for(Stripe stripe: stripes) {
+					dictionaries.add(stripe.terms);
+					postings.add(stripe.index);
+				}
+				return new FrozenInvertedIndex(dictionaries, postings, documents, positions);
+			} finally {
+				for(Stripe stripe: stripes) {
+					stripe.lock.unlockReadOnly();
+				}
+			}
+		} finally {
+			documentLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean containsWord(String word) {
+		Stripe stripe = stripes[stripeOf(word)];
+		stripe.lock.lockReadOnly();
+		try {
+			return stripe.terms.get(word) >= 0;
+		} finally {
+			stripe.lock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getTotalWords(String path) {
+		documentLock.lockReadOnly();
+		try {
+			int document = documents.find(path);
+			return document >= 0 ? documents.getCount(document) : 0;
+		} finally {
+			documentLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isEmpty() {
+		for(Stripe stripe: stripes) {
+			stripe.lock.lockReadOnly();
+			try {
+				if(stripe.terms.size() > 0) {
+					return false;
+				}
+			} finally {
+				stripe.lock.unlockReadOnly();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see #freeze()
+	 */
+	@Override
+	public void toIndexJSON(Path path) throws IOException {
+		freeze().toIndexJSON(path);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see DocumentTable#toLocations()
+	 */
+	@Override
+	public void toLocationsJSON(Path path) throws IOException {
+		documentLock.lockReadOnly();
+		try {
+			TreeJSONWriter.asObject(documents.toLocations(), path);
+		} finally {
+			documentLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ArrayList<OneResult> partialSearch(TreeSet<String> oneLineQuery) {
+		ArrayList<OneResult> list = new ArrayList<>();
+		documentLock.lockReadOnly();
+		try {
+			OneResult[] result = new OneResult[documents.size()];
+			for(String oneQuery: oneLineQuery) {
+				// the words starting with a prefix are spread over all the stripes
+				for(Stripe stripe: stripes) {
+					stripe.lock.lockReadOnly();
+					try {
+						for(int ordinal: stripe.terms.getPrefix(oneQuery)) {
+							searchHelper(result, stripe.index.get(ordinal), list);
+						}
+					} finally {
+						stripe.lock.unlockReadOnly();
+					}
+				}
+			}
+			Collections.sort(list);
+		} finally {
+			documentLock.unlockReadOnly();
+		}
+		return list;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ArrayList<OneResult> exactSearch(TreeSet<String> oneLineQuery) {
+		ArrayList<OneResult> list = new ArrayList<>();
+		documentLock.lockReadOnly();
+		try {
+			OneResult[] result = new OneResult[documents.size()];
+			for(String oneQuery: oneLineQuery) {
+				Stripe stripe = stripes[stripeOf(oneQuery)];
+				stripe.lock.lockReadOnly();
+				try {
+					searchHelper(result, stripe.getPostings(oneQuery), list);
+				} finally {
+					stripe.lock.unlockReadOnly();
+				}
+			}
+			Collections.sort(list);
+		} finally {
+			documentLock.unlockReadOnly();
+		}
+		return list;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ArrayList<OneResult> partialSearch(String word) {
+		ArrayList<OneResult> list = new ArrayList<>();
+		documentLock.lockReadOnly();
+		try {
+			for(Stripe stripe: stripes) {
+				stripe.lock.lockReadOnly();
+				try {
+					for(int ordinal: stripe.terms.getPrefix(word)) {
+						searchHelper(stripe.index.get(ordinal), list);
+					}
+				} finally {
+					stripe.lock.unlockReadOnly();
+				}
+			}
+			Collections.sort(list);
+		} finally {
+			documentLock.unlockReadOnly();
+		}
+		return list;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ArrayList<OneResult> exactSearch(String word) {
+		ArrayList<OneResult> list = new ArrayList<>();
+		documentLock.lockReadOnly();
+		try {
+			Stripe stripe = stripes[stripeOf(word)];
+			stripe.lock.lockReadOnly();
+			try {
+				searchHelper(stripe.getPostings(word), list);
+			} finally {
+				stripe.lock.unlockReadOnly();
+			}
+			Collections.sort(list);
+		} finally {
+			documentLock.unlockReadOnly();
+		}
+		return list;
+	}
+
+	/**
+	 * Search helper method
+	 * @param result search result of each document, indexed by document id
+	 * @param postings postings of the index word, may be null
+	 * @param list returned array list
+	 */
+	private void searchHelper(OneResult[] result, PostingList postings, ArrayList<OneResult> list) {
+		if(postings != null) {
+			for(int i = 0; i < postings.size(); i++) {
+				int document = postings.getDocument(i);
+				if(result[document] != null) {
+					result[document].updateCount(postings.getCount(i));
+				} else {
+					OneResult oneResult = new OneResult(documents, document, postings.getCount(i));
+					result[document] = oneResult;
+					list.add(oneResult);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Search helper method for one word, every posting becomes its own result
+	 * @param postings postings of the index word, may be null
+	 * @param list returned array list
+	 */
+	private void searchHelper(PostingList postings, ArrayList<OneResult> list) {
+		if(postings != null) {
+			for(int i = 0; i < postings.size(); i++) {
+				list.add(new OneResult(documents, postings.getDocument(i), postings.getCount(i)));
+			}
+		}
+	}
+
+	/**
+	 * Return the stripe of the given word
+	 * @param word index word
+	 * @return index of the stripe
+	 */
+	private int stripeOf(String word) {
+		int hash = word.hashCode();
+		return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+	}
+
+	/**
+	 * Group the ordinals by stripe
+	 * @param stripeOf the stripe of every ordinal
+	 * @return the ordinals of every stripe
+	 */
+	private int[][] group(int[] stripeOf) {
+		int[] sizes = new int[stripes.length];
+		for(int s: stripeOf) {
+			sizes[s]++;
+		}
+		int[][] groups = new int[stripes.length][];
+		for(int s = 0; s < groups.length; s++) {
+			groups[s] = new int[sizes[s]];
+			sizes[s] = 0;
+		}
+		for(int ordinal = 0; ordinal < stripeOf.length; ordinal++) {
+			int s = stripeOf[ordinal];
+			groups[s][sizes[s]++] = ordinal;
+		}
+		return groups;
+	}
+
+	/**
+	 * Stripe class
+	 * 	the words of one stripe and their postings, guarded by the lock of the stripe
+	 * @author Hao Shen
+	 *
+	 */
+	private class Stripe {
+
+		//word -> ordinal
+		private final TermTrie terms;
+		//ordinal -> PostingList<document id, PositionList>
+		private final ArrayList<PostingList> index;
+		private final ReadWriteLock lock;
+
+		/**
+		 * Initializes an empty stripe
+		 */
+		public Stripe() {
+			this.terms = new TermTrie();
+			this.index = new ArrayList<PostingList>();
+			this.lock = new ReadWriteLock();
+		}
+
+		/**
+		 * Return the postings of the given word
+		 * @param word index word
+		 * @return postings of the word, null if the word is not in the stripe
+		 */
+		private PostingList getPostings(String word) {
+			int ordinal = terms.get(word);
+			return ordinal >= 0 ? index.get(ordinal) : null;
+		}
+
+		/**
+		 * Return the postings of the given word, adding the word with empty postings if it is new
+		 * @param word index word
+		 * @param capacity the initial capacity of new postings
+		 * @return postings of the word
+		 */
+		private PostingList getOrCreatePostings(String word, int capacity) {
+			int ordinal = terms.add(word);
+			if(ordinal == index.size()) {
+				index.add(new PostingList(capacity, positions));
+			}
+			return index.get(ordinal);
+		}
+	}
+}
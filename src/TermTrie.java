@@ -0,0 +1,315 @@
+import java.util.Arrays;
+
+/**
+ * TermTrie class
+ * 	term dictionary of the inverted index, a compressed prefix tree that maps
+ * 	every word to a dense ordinal. Nodes are kept in parallel int arrays and
+ * 	edge labels in one shared char pool, so a word costs a couple of array
+ * 	slots instead of a String and a TreeMap entry.
+ *
+ * 	Children of a node are kept in a sibling list sorted by their first char,
+ * 	so a depth first walk visits the words in {@link String#compareTo(String)} order.
+ * @author Hao Shen
+ *
+ */
+public class TermTrie {
+
+	private static final int NONE = -1;
+	private static final int ROOT = 0;
+
+	//node -> edge label in the char pool
+	private int[] labelStart;
+	private int[] labelLength;
+	//node -> first child, next sibling and parent node
+	private int[] firstChild;
+	private int[] nextSibling;
+	private int[] parent;
+	//node -> ordinal of the word ending at this node, NONE if no word ends here
+	private int[] ordinal;
+	private int nodes;
+
+	//shared storage of every edge label
+	private char[] pool;
+	private int poolSize;
+
+	//ordinal -> node the word ends at
+	private int[] terminal;
+	private int size;
+
+	/**
+	 * Initializes an empty term dictionary
+	 */
+	public TermTrie() {
+		int capacity = 64;
+		this.labelStart = new int[capacity];
+		this.labelLength = new int[capacity];
+		this.firstChild = new int[capacity];
+		this.nextSibling = new int[capacity];
+		this.parent = new int[capacity];
+		this.ordinal = new int[capacity];
+		this.pool = new char[256];
+		this.terminal = new int[capacity];
+		this.nodes = 0;
+		this.poolSize = 0;
+		this.size = 0;
+		newNode(0, 0, NONE);
+	}
+
+	/**
+	 * Return the number of words in the dictionary
+	 * @return number of words
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return the ordinal of the given word
+	 * @param term word to look up
+	 * @return ordinal of the word, -1 if the word is not in the dictionary
+	 */
+	public int get(CharSequence term) {
+		int node = ROOT;
+		int i = 0;
+		while(i < term.length()) {
+			int child = findChild(node, term.charAt(i));
+			if(child == NONE) {
+				return NONE;
+			}
+			int start = labelStart[child];
+			int length = labelLength[child];
+			if(term.length() - i < length) {
+				return NONE;
+			}
+			for(int k = 0; k < length; k++) {
+				if(pool[start+k] != term.charAt(i+k)) {
+					return NONE;
+				}
+			}
+			node = child;
+			i += length;
+		}
+		return ordinal[node];
+	}
+
+	/**
+	 * Return the ordinal of the given word, adding the word with the next
+	 * ordinal if it is not in the dictionary yet
+	 * @param term word to add
+	 * @return ordinal of the word
+	 */
+	public int add(CharSequence term) {
+		int node = ROOT;
+		int i = 0;
+		while(i < term.length()) {
+			char c = term.charAt(i);
+
+			//find the child starting with c, remembering the sibling before it
+			int previous = NONE;
+			int child = firstChild[node];
+			while(child != NONE && pool[labelStart[child]] < c) {
+				previous = child;
+				child = nextSibling[child];
+			}
+
+			if(child == NONE || pool[labelStart[child]] != c) {
+				int leaf = newNode(appendLabel(term, i), term.length() - i, node);
+				link(node, previous, leaf, child);
+				return assignOrdinal(leaf);
+			}
+
+			int start = labelStart[child];
+			int length = labelLength[child];
+			int k = 1;
+			while(k < length && i+k < term.length() && pool[start+k] == term.charAt(i+k)) {
+				k++;
+			}
+
+			if(k < length) {
+				//split the edge, the shared part becomes a new node above the child
+				int middle = newNode(start, k, node);
+				link(node, previous, middle, nextSibling[child]);
+				firstChild[middle] = child;
+				nextSibling[child] = NONE;
+				parent[child] = middle;
+				labelStart[child] = start + k;
+				labelLength[child] = length - k;
+				child = middle;
+			}
+			node = child;
+			i += k;
+		}
+		return assignOrdinal(node);
+	}
+
+	/**
+	 * Return the word of the given ordinal
+	 * @param ordinal ordinal of the word
+	 * @return the word
+	 */
+	public String getTerm(int ordinal) {
+		int node = terminal[ordinal];
+		int length = 0;
+		for(int n = node; n != ROOT; n = parent[n]) {
+			length += labelLength[n];
+		}
+
+		char[] term = new char[length];
+		for(int n = node; n != ROOT; n = parent[n]) {
+			length -= labelLength[n];
+			System.arraycopy(pool, labelStart[n], term, length, labelLength[n]);
+		}
+		return new String(term);
+	}
+
+	/**
+	 * Return the ordinals of every word starting with the given prefix, in
+	 * sorted word order. The prefix is matched in one walk down the tree and
+	 * the completions are collected in one walk of the subtree below it.
+	 * @param prefix prefix of the words
+	 * @return ordinals of the matching words
+	 */
+	public int[] getPrefix(CharSequence prefix) {
+		int node = ROOT;
+		int i = 0;
+		while(i < prefix.length()) {
+			int child = findChild(node, prefix.charAt(i));
+			if(child == NONE) {
+				return new int[0];
+			}
+			int start = labelStart[child];
+			int length = Math.min(labelLength[child], prefix.length() - i);
+			for(int k = 0; k < length; k++) {
+				if(pool[start+k] != prefix.charAt(i+k)) {
+					return new int[0];
+				}
+			}
+			node = child;
+			i += length;
+		}
+
+		int[] found = new int[Math.min(size, 16)];
+		int count = 0;
+
+		//depth first walk without recursion, visiting a node before its children
+		int current = node;
+		while(current != NONE) {
+			if(ordinal[current] != NONE) {
+				if(count == found.length) {
+					found = Arrays.copyOf(found, count * 2);
+				}
+				found[count++] = ordinal[current];
+			}
+
+			if(firstChild[current] != NONE) {
+				current = firstChild[current];
+			} else {
+				while(current != node && nextSibling[current] == NONE) {
+					current = parent[current];
+				}
+				current = (current == node ? NONE : nextSibling[current]);
+			}
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * Return the ordinals of every word in sorted word order
+	 * @return ordinals of all the words
+	 *
+	 * @see #getPrefix(CharSequence)
+	 */
+	public int[] getAll() {
+		return getPrefix("");
+	}
+
+	/**
+	 * Find the child of the node whose label starts with the given char
+	 * @param node parent node
+	 * @param c first char of the label
+	 * @return child node, -1 if there is no such child
+	 */
+	private int findChild(int node, char c) {
+		int child = firstChild[node];
+		while(child != NONE && pool[labelStart[child]] < c) {
+			child = nextSibling[child];
+		}
+		return (child != NONE && pool[labelStart[child]] == c) ? child : NONE;
+	}
+
+	/**
+	 * Put the node into the sibling list of the parent, between previous and next
+	 * @param node parent node
+	 * @param previous sibling before the new node, -1 if the new node is the first child
+	 * @param child the new node
+	 * @param next sibling after the new node
+	 */
+	private void link(int node, int previous, int child, int next) {
+		nextSibling[child] = next;
+		if(previous == NONE) {
+			firstChild[node] = child;
+		} else {
+			nextSibling[previous] = child;
+		}
+	}
+
+	/**
+	 * Give the node the next ordinal if no word ends there yet
+	 * @param node node the word ends at
+	 * @return ordinal of the word
+	 */
+	private int assignOrdinal(int node) {
+		if(ordinal[node] == NONE) {
+			if(size == terminal.length) {
+				terminal = Arrays.copyOf(terminal, size + (size >> 1));
+			}
+			terminal[size] = node;
+			ordinal[node] = size++;
+		}
+		return ordinal[node];
+	}
+
+	/**
+	 * Copy the rest of the word into the char pool
+	 * @param term word
+	 * @param from index of the first char to copy
+	 * @return start of the label in the pool
+	 */
+	private int appendLabel(CharSequence term, int from) {
+		int length = term.length() - from;
+		if(poolSize + length > pool.length) {
+			pool = Arrays.copyOf(pool, Math.max(poolSize + length, pool.length + (pool.length >> 1)));
+		}
+		int start = poolSize;
+		for(int k = 0; k < length; k++) {
+			pool[poolSize++] = term.charAt(from+k);
+		}
+		return start;
+	}
+
+	/**
+	 * Add a node with the given label
+	 * @param start start of the label in the pool
+	 * @param length length of the label
+	 * @param parentNode the parent of the new node
+	 * @return the new node
+	 */
+	private int newNode(int start, int length, int parentNode) {
+		if(nodes == labelStart.length) {
+			int grow = nodes + (nodes >> 1);
+			labelStart = Arrays.copyOf(labelStart, grow);
+			labelLength = Arrays.copyOf(labelLength, grow);
+			firstChild = Arrays.copyOf(firstChild, grow);
+			nextSibling = Arrays.copyOf(nextSibling, grow);
+			parent = Arrays.copyOf(parent, grow);
+			ordinal = Arrays.copyOf(ordinal, grow);
+		}
+		labelStart[nodes] = start;
+		labelLength[nodes] = length;
+		firstChild[nodes] = NONE;
+		nextSibling[nodes] = NONE;
+		parent[nodes] = parentNode;
+		ordinal[nodes] = NONE;
+		return nodes++;
+	}
+}
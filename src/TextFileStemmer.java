@@ -13,18 +13,20 @@ public class TextFileStemmer {
 
 	/**
 	 * Returns a list of cleaned and stemmed words parsed from the provided line.
-	 * Uses the English {@link SnowballStemmer.ALGORITHM} for stemming.
+	 * Uses the shared {@link StemCache}, which stems with the English
+	 * {@link SnowballStemmer.ALGORITHM}.
 	 *
 	 * @param line the line of words to clean, split, and stem
 	 * @return list of cleaned and stemmed words
 	 *
 	 * @see SnowballStemmer
 	 * @see SnowballStemmer.ALGORITHM#ENGLISH
+	 * @see StemCache#getShared()
 	 * @see #stemLine(String, Stemmer)
 	 */
 	public static List<String> stemLine(String line) {
 		// This is provided for you.
-		return stemLine(line, new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH));
+		return stemLine(line, StemCache.getShared());
 	}
 
 	/**
@@ -35,19 +37,16 @@ public class TextFileStemmer {
 	 * @return list of cleaned and stemmed words
 	 *
 	 * @see Stemmer#stem(CharSequence)
-	 * @see TextParser#parse(String)
+	 * @see TextParser#tokenize(CharSequence, java.util.function.Consumer)
 	 */
 	public static List<String> stemLine(String line, Stemmer stemmer) {
 		
-		var parser = TextParser.parse(line);
 		var result = new ArrayList<String>();
-		
-		
-		for(String s: parser) {
+		TextParser.tokenize(line, s -> {
 			if(!s.trim().isEmpty()) {
 				result.add(stemmer.stem(s).toString());
-			} 
-		}
+			}
+		});
 		
 		return result;
 	}
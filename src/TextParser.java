@@ -1,4 +1,8 @@
+import java.nio.CharBuffer;
 import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 /**
@@ -49,4 +53,160 @@ public class TextParser {
 	public static String[] parse(String text) {
 		return split(clean(text));
 	}
+
+	/**
+	 * Cleans the text and splits it by whitespace like {@link #parse(String)},
+	 * handing each word to the action instead of building the copies and the
+	 * array. Words made only of ASCII characters are cleaned one character at a
+	 * time, the other words are cleaned by {@link #clean(CharSequence)} on
+	 * their own, which gives the same words since normalizing and lower casing
+	 * never look past the whitespace around a word.
+	 *
+	 * @param text the text to clean and split
+	 * @param action receives every word, in the order of {@link #parse(String)}
+	 *
+	 * @see #parse(String)
+	 */
+	public static void tokenize(CharSequence text, Consumer<String> action) {
+		WordConsumer words = (word, length) -> action.accept(new String(word, 0, length));
+		if(text instanceof CharBuffer && ((CharBuffer) text).hasArray()) {
+			//read the chars in place
+			CharBuffer buffer = (CharBuffer) text;
+			int from = buffer.arrayOffset() + buffer.position();
+			tokenize(buffer.array(), from, from + buffer.remaining(), words);
+		} else {
+			char[] chars = text.toString().toCharArray();
+			tokenize(chars, 0, chars.length, words);
+		}
+	}
+
+	/**
+	 * Cleans and splits part of the text like {@link #tokenize(CharSequence, Consumer)},
+	 * handing the words to the action in a reused buffer, so a caller that
+	 * looks the words up does not need a new String for every word.
+	 *
+	 * @param text the text to clean and split
+	 * @param from index of the first char to split
+	 * @param to index after the last char to split
+	 * @param action receives every word
+	 *
+	 * @see #tokenize(CharSequence, Consumer)
+	 */
+	public static void tokenize(char[] text, int from, int to, WordConsumer action) {
+		String language = Locale.getDefault().getLanguage();
+		//these languages lower case some letters differently, and the capital
+		//sigma lower cases by the letters around it, so leave those to parse
+		if(language.equals("tr") || language.equals("az") || language.equals("lt") || contains(text, from, to, '\u03A3')) {
+			for(String word: parse(new String(text, from, to - from))) {
+				action.accept(word.toCharArray(), word.length());
+			}
+			return;
+		}
+
+		char[] word = new char[32];
+		int length = 0;
+		//start of the word in the text
+		int start = from;
+		//true until the first word is handed out
+		boolean first = true;
+		//split gives an empty first word when the text after trim starts with whitespace
+		boolean leading = false;
+		int i = from;
+		while(i < to) {
+			char c = text[i];
+			if(c < 0x80) {
+				if(length == word.length) {
+					word = Arrays.copyOf(word, length * 2);
+				}
+				if(c >= 'a' && c <= 'z') {
+					word[length++] = c;
+				} else if(c >= 'A' && c <= 'Z') {
+					word[length++] = (char) (c + ('a' - 'A'));
+				} else if(c == ' ' || (c >= '\t' && c <= '\r')) {
+					if(length > 0) {
+						first = accept(word, length, first, leading, action);
+						length = 0;
+					}
+					start = i + 1;
+				}
+				i++;
+			} else {
+				int codePoint = Character.codePointAt(text, i, to);
+				if(isSpace(codePoint)) {
+					if(length > 0) {
+						first = accept(word, length, first, leading, action);
+						length = 0;
+					}
+					//only the ASCII whitespace is at most a space, and removed by trim
+					leading |= first;
+					i += Character.charCount(codePoint);
+					start = i;
+				} else {
+					//clean the whole word the regular way
+					int end = i;
+					while(end < to) {
+						codePoint = Character.codePointAt(text, end, to);
+						if(codePoint < 0x80 ? codePoint == ' ' || (codePoint >= '\t' && codePoint <= '\r') : isSpace(codePoint)) {
+							break;
+						}
+						end += Character.charCount(codePoint);
+					}
+					String cleaned = clean(new String(text, start, end - start));
+					if(cleaned.length() > word.length) {
+						word = new char[cleaned.length()];
+					}
+					cleaned.getChars(0, cleaned.length(), word, 0);
+					length = cleaned.length();
+					i = end;
+				}
+			}
+		}
+		if(length > 0) {
+			accept(word, length, first, leading, action);
+		}
+	}
+
+	/**
+	 * Hand the word to the action, after the empty first word if split would give one
+	 * @return false, the first word has been handed out
+	 */
+	private static boolean accept(char[] word, int length, boolean first, boolean leading, WordConsumer action) {
+		if(first && leading) {
+			action.accept(word, 0);
+		}
+		action.accept(word, length);
+		return false;
+	}
+
+	private static boolean contains(char[] text, int from, int to, char c) {
+		for(int i = from; i < to; i++) {
+			if(text[i] == c) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check for the whitespace matched by (?U)\p{Space}
+	 */
+	private static boolean isSpace(int codePoint) {
+		int type = Character.getType(codePoint);
+		return type == Character.SPACE_SEPARATOR || type == Character.LINE_SEPARATOR || type == Character.PARAGRAPH_SEPARATOR
+				|| (codePoint >= 0x9 && codePoint <= 0xd) || codePoint == 0x85;
+	}
+
+	/**
+	 * WordConsumer interface
+	 * 	receives the words of {@link TextParser#tokenize(char[], int, int, WordConsumer)}
+	 */
+	public interface WordConsumer {
+
+		/**
+		 * Receive the next word
+		 * @param word buffer starting with the word, only valid until this method returns
+		 * @param length number of chars in the word, 0 for an empty word
+		 */
+		void accept(char[] word, int length);
+	}
 }
@@ -1,9 +1,11 @@
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.function.Supplier;
 
 /**
  * Thread safe version of inverted index
@@ -18,7 +20,17 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 * Invoke the parent constructor and initialize the read write lock
 	 */
 	public ThreadSafeInvertedIndex() {
-		super();
+		this(true);
+	}
+
+	/**
+	 * Invoke the parent constructor and initialize the read write lock
+	 * @param positions false to keep only the count of each word in each document
+	 *
+	 * @see InvertedIndex#InvertedIndex(boolean)
+	 */
+	public ThreadSafeInvertedIndex(boolean positions) {
+		super(positions);
 		this.lock = new ReadWriteLock();
 	}
 
@@ -123,6 +135,56 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 	
+	/**
+	 * Put all the words of one document at once. The words are grouped
+	 * before taking the write lock, so the lock is held for one insert per
+	 * distinct word instead of one per word.
+	 *
+	 * @see InvertedIndex#putDocument(String, List, int)
+	 */
+	@Override
+	public void putDocument(String location, List<String> words, int start) {
+		var positions = collect(words, start);
+		lock.lockReadWrite();
+		try {
+			super.putDocument(location, positions, words.size());
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * Return the ordinal of the given word under the write lock, adding the
+	 * word if it is new
+	 *
+	 * @see InvertedIndex#intern(String)
+	 */
+	@Override
+	int intern(String word) {
+		lock.lockReadWrite();
+		try {
+			return super.intern(word);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * Put the positions of one document grouped by word ordinal under the
+	 * write lock
+	 *
+	 * @see InvertedIndex#putDocument(String, int[], PositionList[], int, int)
+	 */
+	@Override
+	void putDocument(String location, int[] ordinals, PositionList[] positions, int count, int total) {
+		lock.lockReadWrite();
+		try {
+			super.putDocument(location, ordinals, positions, count, total);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
 	@Override
 	public void toLocationsJSON(Path path) throws IOException{
 		lock.lockReadOnly();
@@ -133,14 +195,14 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 	
+	/**
+	 * Return the total word for given path, reading optimistically
+	 *
+	 * @see #optimisticRead(Supplier)
+	 */
 	@Override
 	public int getTotalWords(String path) {
-		lock.lockReadOnly();
-		try {
-			return super.getTotalWords(path);
-		} finally {
-			lock.unlockReadOnly();
-		}
+		return optimisticRead(() -> super.getTotalWords(path));
 	}
 	
 	@Override
@@ -154,15 +216,25 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	}
 	
 	@Override
-	public boolean isEmpty() {
+	public FrozenInvertedIndex freeze() {
 		lock.lockReadOnly();
 		try {
-			return super.isEmpty();
+			return super.freeze();
 		} finally {
 			lock.unlockReadOnly();
 		}
 	}
 	
+	/**
+	 * Return true if the data structure is empty, reading optimistically
+	 *
+	 * @see #optimisticRead(Supplier)
+	 */
+	@Override
+	public boolean isEmpty() {
+		return optimisticRead(super::isEmpty);
+	}
+	
 	@Override
 	public String toString() {
 		lock.lockReadOnly();
@@ -203,6 +275,21 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	/**
+	 * Add a later part of the same documents under the write lock
+	 *
+	 * @see InvertedIndex#addAll(InvertedIndex, int)
+	 */
+	@Override
+	public void addAll(InvertedIndex part, int offset) {
+		lock.lockReadWrite();
+		try {
+			super.addAll(part, offset);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
 	public ArrayList<OneResult> exactSearch(String word) {
 		lock.lockReadOnly();
 		try {
@@ -220,6 +307,32 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 			lock.unlockReadOnly();
 		}
 	}
-	
-	
+
+	/**
+	 * Run a short read without locking, and again under the read lock if a
+	 * write happened meanwhile. Only used for constant time lookups that do not
+	 * walk the term dictionary or the postings, which could be seen half
+	 * updated by a read that overlaps a write.
+	 * @param read the read to run
+	 * @return the result of the read
+	 */
+	private <T> T optimisticRead(Supplier<T> read) {
+		long stamp = lock.tryOptimisticRead();
+		if(stamp != 0) {
+			try {
+				T result = read.get();
+				if(lock.validate(stamp)) {
+					return result;
+				}
+			} catch(RuntimeException e) {
+				// overlapped a write, read again under the lock
+			}
+		}
+		lock.lockReadOnly();
+		try {
+			return read.get();
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
 }
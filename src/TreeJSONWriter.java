@@ -7,7 +7,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
@@ -297,18 +299,123 @@ public class TreeJSONWriter {
 		writer.write("}");
 	}
 
+	/**
+	 * Writes the position list formatted as a pretty JSON array of numbers
+	 * using the provided {@link Writer} and indentation level.
+	 *
+	 * @param elements the positions to convert to JSON
+	 * @param writer   the writer to use
+	 * @param level    the initial indentation level
+	 * @throws IOException if the writer encounters any issues
+	 *
+	 * @see #asArray(TreeSet, Writer, int)
+	 */
+	public static void asArray(PositionList elements, Writer writer,
+			int level) throws IOException {
+
+		asArray(elements.toArray(), writer, level);
+	}
+
+	/**
+	 * Writes the sorted positions formatted as a pretty JSON array of numbers
+	 * using the provided {@link Writer} and indentation level.
+	 *
+	 * @param elements the positions to convert to JSON
+	 * @param writer   the writer to use
+	 * @param level    the initial indentation level
+	 * @throws IOException if the writer encounters any issues
+	 *
+	 * @see #asArray(TreeSet, Writer, int)
+	 */
+	public static void asArray(int[] elements, Writer writer,
+			int level) throws IOException {
+
+		writer.write("[");
+		writer.write(System.lineSeparator());
+		if(elements.length > 0) {
+
+			indent(level+1, writer);
+			writer.write(Integer.toString(elements[0]));
+
+			for(int i = 1; i < elements.length; i++) {
+				writer.write(",");
+				writer.write(System.lineSeparator());
+
+				indent(level+1, writer);
+				writer.write(Integer.toString(elements[i]));
+			}
+			writer.write(System.lineSeparator());
+		}
+		indent(level, writer);
+		writer.write("]");
+	}
+
+	/**
+	 * Writes the posting list of one word as a nested pretty JSON object of
+	 * path to positions using the provided {@link Writer} and indentation level.
+	 * The paths are resolved from the document table and written in sorted order.
+	 * Postings without positions write the count instead of the positions.
+	 *
+	 * @param elements  the postings to convert to JSON
+	 * @param documents the document table the postings refer to
+	 * @param rank      the sorted rank of every document id
+	 * @param writer    the writer to use
+	 * @param level     the initial indentation level
+	 * @throws IOException if the writer encounters any issues
+	 *
+	 * @see #asNestedObject(TreeMap, Writer, int)
+	 * @see #asArray(PositionList, Writer, int)
+	 * @see DocumentTable#getRanks()
+	 */
+	public static void asPostingObject(PostingList elements, DocumentTable documents,
+			int[] rank, Writer writer, int level) throws IOException {
+
+		writer.write("{");
+		writer.write(System.lineSeparator());
+
+		if(elements.size() > 0) {
+			// sort the entries by path rank, keeping the entry index in the low bits
+			long[] order = new long[elements.size()];
+			for(int i = 0; i < order.length; i++) {
+				order[i] = ((long) rank[elements.getDocument(i)] << 32) | i;
+			}
+			Arrays.sort(order);
+
+			for(int i = 0; i < order.length; i++) {
+				int entry = (int) order[i];
+				if(i > 0) {
+					writer.write(",");
+					writer.write(System.lineSeparator());
+				}
+				indent(level+1, writer);
+				writer.write("\"" + documents.getPath(elements.getDocument(entry)) + "\": ");
+				if(elements.isPositional()) {
+					asArray(elements.getPositions(entry), writer, level+1);
+				} else {
+					writer.write(Integer.toString(elements.getCount(entry)));
+				}
+			}
+
+			writer.write(System.lineSeparator());
+		}
+		indent(level, writer);
+		writer.write("}");
+	}
+
 	/**
 	 * Returns the inverted index of elements formatted as a nested pretty JSON object.
 	 *
-	 * @param elements the inverted index to convert to JSON
+	 * @param terms     the term dictionary of the inverted index
+	 * @param elements  the postings of every term ordinal
+	 * @param documents the document table the postings refer to
 	 * @return {@link String} containing the elements in pretty JSON format
 	 *
-	 * @see #asDoubleNestedObject(TreeMap, Writer, int)
+	 * @see #asDoubleNestedObject(TermTrie, List, DocumentTable, Writer, int)
 	 */
-	public static String asDoubleNestedObject(TreeMap<String, TreeMap<String, TreeSet<Integer>>> elements) {
+	public static String asDoubleNestedObject(TermTrie terms, List<PostingList> elements, DocumentTable documents) {
 		try {
 			StringWriter writer = new StringWriter();
-			asDoubleNestedObject(elements, writer, 0);
+			asDoubleNestedObject(terms, elements, documents, writer, 0);
 			return writer.toString();
 		}
 		catch (IOException e) {
@@ -320,51 +427,144 @@ public class TreeJSONWriter {
 	 * Writes the inverted index of elements formatted as a nested pretty JSON object
 	 * to the specified file.
 	 *
-	 * @param elements the inverted index to convert to JSON
-	 * @param path     the path to the file write to output
+	 * @param terms     the term dictionary of the inverted index
+	 * @param elements  the postings of every term ordinal
+	 * @param documents the document table the postings refer to
+	 * @param path      the path to the file write to output
 	 * @throws IOException if the writer encounters any issues
 	 *
-	 * @see #asDoubleNestedObject(TreeMap, Writer, int)
+	 * @see #asDoubleNestedObject(TermTrie, List, DocumentTable, Writer, int)
 	 */
-	public static void asDoubleNestedObject(TreeMap<String, TreeMap<String, TreeSet<Integer>>> elements,
+	public static void asDoubleNestedObject(TermTrie terms, List<PostingList> elements, DocumentTable documents,
 			Path path) throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path,
 				StandardCharsets.UTF_8)) {
-			asDoubleNestedObject(elements, writer, 0);
+			asDoubleNestedObject(terms, elements, documents, writer, 0);
 		}
 	}
 
 	/**
 	 * Write the inverted index data structure out using JSON format
+	 * 	the words are written in sorted order by walking the term dictionary
+	 * @param terms the term dictionary of the inverted index
 	 * @param elements data structure 
-	 * 	TreeMap<word, TreeMap<path, TreeSet<position>>>
+	 * 	ordinal -> PostingList
+	 * @param documents the document table the postings refer to
 	 * @param writer bufferedWriter to write to the file
 	 * @param level indentation level, start from 0
 	 * @throws IOException
 	 * 
-	 * @see {@link #asNestedObject(TreeMap, Writer, int)}
+	 * @see {@link #asPostingObject(PostingList, DocumentTable, int[], Writer, int)}
 	 * @see #indent(int, Writer)
 	 */
-	public static void asDoubleNestedObject(TreeMap<String, TreeMap<String, TreeSet<Integer>>> elements, 
+	public static void asDoubleNestedObject(TermTrie terms, List<PostingList> elements, DocumentTable documents,
 			Writer writer, int level) throws IOException {
 
 		indent(level, writer);
 		writer.write("{");
 		writer.write(System.lineSeparator());
 
-		if(!elements.isEmpty()) {
-			String firstKey = elements.firstKey();
-			indent(level+1, writer);
-			writer.write("\"" + firstKey + "\": ");
-			asNestedObject(elements.get(firstKey), writer, level+1);
-			String nextKey = elements.higherKey(firstKey);
-			while(nextKey != null) {
-				writer.write(",");
+		if(terms.size() > 0) {
+			int[] rank = documents.getRanks();
+			int[] ordinals = terms.getAll();
+			for(int i = 0; i < ordinals.length; i++) {
+				if(i > 0) {
+					writer.write(",");
+					writer.write(System.lineSeparator());
+				}
+				indent(level+1, writer);
+				writer.write("\"" + terms.getTerm(ordinals[i]) + "\": ");
+				asPostingObject(elements.get(ordinals[i]), documents, rank, writer, level+1);
+			}
+			writer.write(System.lineSeparator());
+		}
+		indent(level, writer);
+		writer.write("}");
+	}
+
+	/**
+	 * Returns the frozen inverted index formatted as a nested pretty JSON object.
+	 *
+	 * @param elements the frozen inverted index to convert to JSON
+	 * @return {@link String} containing the elements in pretty JSON format
+	 *
+	 * @see #asDoubleNestedObject(FrozenInvertedIndex, Writer, int)
+	 */
+	public static String asDoubleNestedObject(FrozenInvertedIndex elements) {
+		try {
+			StringWriter writer = new StringWriter();
+			asDoubleNestedObject(elements, writer, 0);
+			return writer.toString();
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the frozen inverted index formatted as a nested pretty JSON object
+	 * to the specified file.
+	 *
+	 * @param elements the frozen inverted index to convert to JSON
+	 * @param path     the path to the file write to output
+	 * @throws IOException if the writer encounters any issues
+	 *
+	 * @see #asDoubleNestedObject(FrozenInvertedIndex, Writer, int)
+	 */
+	public static void asDoubleNestedObject(FrozenInvertedIndex elements, Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path,
+				StandardCharsets.UTF_8)) {
+			asDoubleNestedObject(elements, writer, 0);
+		}
+	}
+
+	/**
+	 * Write the frozen inverted index out using JSON format. The words and the
+	 * postings of each word are already in sorted order. An index without
+	 * positions writes the count of each posting instead of its positions.
+	 * @param elements frozen inverted index
+	 * @param writer bufferedWriter to write to the file
+	 * @param level indentation level, start from 0
+	 * @throws IOException
+	 *
+	 * @see #indent(int, Writer)
+	 */
+	public static void asDoubleNestedObject(FrozenInvertedIndex elements, Writer writer,
+			int level) throws IOException {
+
+		indent(level, writer);
+		writer.write("{");
+		writer.write(System.lineSeparator());
+
+		int termCount = elements.getTermCount();
+		if(termCount > 0) {
+			for(int term = 0; term < termCount; term++) {
+				if(term > 0) {
+					writer.write(",");
+					writer.write(System.lineSeparator());
+				}
+				indent(level+1, writer);
+				writer.write("\"" + elements.getTerm(term) + "\": ");
+
+				writer.write("{");
+				writer.write(System.lineSeparator());
+				int end = elements.getPostingStart(term+1);
+				for(int posting = elements.getPostingStart(term); posting < end; posting++) {
+					if(posting > elements.getPostingStart(term)) {
+						writer.write(",");
+						writer.write(System.lineSeparator());
+					}
+					indent(level+2, writer);
+					writer.write("\"" + elements.getPostingPath(posting) + "\": ");
+					if(elements.hasPositions()) {
+						asArray(elements.getPositions(posting), writer, level+2);
+					} else {
+						writer.write(Integer.toString(elements.getCount(posting)));
+					}
+				}
 				writer.write(System.lineSeparator());
 				indent(level+1, writer);
-				writer.write("\"" + nextKey + "\": ");
-				asNestedObject(elements.get(nextKey), writer, level+1);
-				nextKey = elements.higherKey(nextKey);
+				writer.write("}");
 			}
 			writer.write(System.lineSeparator());
 		}
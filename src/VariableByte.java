@@ -0,0 +1,93 @@
+import java.nio.ByteBuffer;
+
+/**
+ * VariableByte class
+ * 	encode and decode the gaps between sorted positions with variable byte
+ * 	encoding: seven bits of the value per byte, low bits first, and the high bit
+ * 	set on every byte except the last one of a value. Most gaps are small, so
+ * 	a position usually takes one byte instead of four.
+ * @author Hao Shen
+ *
+ */
+public class VariableByte {
+
+	/**
+	 * Return the number of bytes needed to encode the value
+	 * @param value non negative value
+	 * @return number of bytes, from 1 to 5
+	 */
+	public static int length(int value) {
+		int length = 1;
+		while((value >>>= 7) != 0) {
+			length++;
+		}
+		return length;
+	}
+
+	/**
+	 * Encode the value into the buffer
+	 * @param value non negative value
+	 * @param buffer byte array with at least {@link #length(int)} bytes left
+	 * @param offset index to write the first byte
+	 * @return index after the last byte written
+	 */
+	public static int write(int value, byte[] buffer, int offset) {
+		while((value & ~0x7F) != 0) {
+			buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[offset++] = (byte) value;
+		return offset;
+	}
+
+	/**
+	 * Decode count gap encoded positions from the byte array
+	 * @param buffer encoded bytes
+	 * @param offset index of the first byte
+	 * @param count number of positions to decode
+	 * @return the positions
+	 */
+	public static int[] decode(byte[] buffer, int offset, int count) {
+		int[] positions = new int[count];
+		int position = 0;
+		for(int i = 0; i < count; i++) {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer[offset++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while(b < 0);
+			position += value;
+			positions[i] = position;
+		}
+		return positions;
+	}
+
+	/**
+	 * Decode count gap encoded positions from the buffer, without moving the
+	 * position of the buffer
+	 * @param buffer encoded bytes
+	 * @param offset index of the first byte
+	 * @param count number of positions to decode
+	 * @return the positions
+	 */
+	public static int[] decode(ByteBuffer buffer, int offset, int count) {
+		int[] positions = new int[count];
+		int position = 0;
+		for(int i = 0; i < count; i++) {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get(offset++);
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while(b < 0);
+			position += value;
+			positions[i] = position;
+		}
+		return positions;
+	}
+}
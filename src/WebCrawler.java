@@ -2,8 +2,7 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashSet;
-
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
+import java.util.function.Consumer;
 
 /**
  * Craw the seed url base on given limit number
@@ -14,12 +13,46 @@ public class WebCrawler {
 
 	private final HashSet<URL> allLink;
 	private final WorkQueue worker;
-	private final ThreadSafeInvertedIndex index;
+	//false to keep only the count of each word
+	private final boolean positions;
+	//receives the inverted index of every page
+	private final Consumer<InvertedIndex> target;
+
+	/**
+	 * Initializes a crawler adding the pages to a striped index, so pages
+	 * fetched by different workers are merged in parallel
+	 * @param worker work queue
+	 * @param striped striped inverted index
+	 *
+	 * @see StripedInvertedIndex#addAll(InvertedIndex)
+	 */
+	public WebCrawler(WorkQueue worker, StripedInvertedIndex striped) {
+		this(worker, striped.hasPositions(), striped::addAll);
+	}
 
-	public WebCrawler(WorkQueue worker, ThreadSafeInvertedIndex threadSafe) {
+	/**
+	 * Initializes a crawler adding every page as a new segment, so searches on
+	 * the index keep running on the published segments while pages are added
+	 * @param worker work queue
+	 * @param segmented segmented inverted index
+	 *
+	 * @see SegmentedInvertedIndex#addSegment(InvertedIndex)
+	 */
+	public WebCrawler(WorkQueue worker, SegmentedInvertedIndex segmented) {
+		this(worker, segmented.hasPositions(), segmented::addSegment);
+	}
+
+	/**
+	 * Initializes a crawler handing the inverted index of every page to the target
+	 * @param worker work queue
+	 * @param positions false to keep only the count of each word
+	 * @param target receives the inverted index of every page
+	 */
+	public WebCrawler(WorkQueue worker, boolean positions, Consumer<InvertedIndex> target) {
 		this.worker = worker;
 		this.allLink = new HashSet<URL>();
-		this.index = threadSafe;
+		this.positions = positions;
+		this.target = target;
 	}
 
 	/**
@@ -29,21 +62,26 @@ public class WebCrawler {
 	 */
 	public void craw(URL seed, int limit) {
 		allLink.add(seed);
-		worker.execute(new WebCrawlerTask(seed, limit));
-		worker.finish();
+		//pages found by the crawl join the group of the seed
+		WorkQueue.TaskGroup crawl = worker.newGroup();
+		crawl.executeBlocking(new FetchTask(seed, limit));
+		crawl.finish();
 	}
 
 	/**
-	 * Craw the url and the link in this url if the limit has not exceeded
+	 * Download the url, then hand the page to a {@link WebCrawlerTask}. Runs
+	 * as blocking work, so downloads can wait on the network without holding
+	 * the workers that stem the pages.
 	 * @author Hao Shen
 	 *
+	 * @see WorkQueue#executeBlocking(Runnable)
 	 */
-	private class WebCrawlerTask implements Runnable {
+	private class FetchTask implements Runnable {
 
 		private final URL eachURL;
 		private final int limit;
 
-		public WebCrawlerTask(URL url, int limit) {
+		public FetchTask(URL url, int limit) {
 			this.eachURL = url;
 			this.limit = limit;
 		}
@@ -51,22 +89,50 @@ public class WebCrawler {
 		@Override
 		public void run() {
 			try {
-
 				var html = HTMLFetcher.fetchHTML(eachURL, 3);
 				if(html == null) {
 					return;
 				}
+				String linkHtml = allLink.size() < limit ? LinkParser.fetchHTML(eachURL) : null;
+				worker.execute(new WebCrawlerTask(eachURL, limit, html, linkHtml));
+			} catch (IOException e) {
+				System.err.println("Unable to read the page: " + eachURL.toString());
+			}
+		}
+	}
 
-				InvertedIndex temp = new InvertedIndex();
-				var stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
-				int start = 1;
-				for(String s: TextParser.parse(HTMLCleaner.stripHTML(html))) {
-					temp.putIndex(stemmer.stem(s).toString(), eachURL.toString(), start++);
-				}
-				index.addAll(temp);
+	/**
+	 * Stem the downloaded page and craw the links in this url if the limit has not exceeded
+	 * @author Hao Shen
+	 *
+	 */
+	private class WebCrawlerTask implements Runnable {
+
+		private final URL eachURL;
+		private final int limit;
+		private final String html;
+		//html to list the links of, null to skip them
+		private final String linkHtml;
+
+		public WebCrawlerTask(URL url, int limit, String html, String linkHtml) {
+			this.eachURL = url;
+			this.limit = limit;
+			this.html = html;
+			this.linkHtml = linkHtml;
+		}
+
+		@Override
+		public void run() {
+			try {
+				InvertedIndex temp = new InvertedIndex(positions);
+				StemCache stemmer = StemCache.getShared();
+				ArrayList<String> words = new ArrayList<String>();
+				TextParser.tokenize(HTMLCleaner.scanHTML(html), s -> words.add(stemmer.stem(s)));
+				temp.putDocument(eachURL.toString(), words);
+				target.accept(temp);
 
-				if(allLink.size() < limit) {
-					ArrayList<URL> links = LinkParser.listLinks(eachURL, LinkParser.fetchHTML(eachURL));
+				if(linkHtml != null && allLink.size() < limit) {
+					ArrayList<URL> links = LinkParser.listLinks(eachURL, linkHtml);
 					for (URL link : links) {
 						synchronized (allLink) {
 							if (allLink.size() >= limit) {
@@ -74,7 +140,7 @@ public class WebCrawler {
 							} else {
 								if (allLink.contains(link) == false) {
 									allLink.add(link);
-									worker.execute(new WebCrawlerTask(link, limit));
+									worker.executeBlocking(new FetchTask(link, limit));
 
 								}
 							}
@@ -1,4 +1,18 @@
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -8,28 +22,135 @@ import org.apache.logging.log4j.Logger;
  * Brian Goetz. It is up to the user of this class to keep track of whether
  * there is any pending work remaining.
  *
+ * The work requests are dispatched according to a {@link Mode}: from one
+ * shared queue, from a deque per worker with work stealing, or by a
+ * {@link ForkJoinPool}.
+ *
+ * Work can be added through a {@link TaskGroup}, so the caller only waits for
+ * its own work instead of all the work of the queue. Work added while running
+ * the work of a group joins the same group.
+ *
+ * Work that mostly waits, like downloading a page, can be added with
+ * {@link #executeBlocking(Runnable)}, so it does not hold one of the worker
+ * threads meant for computing.
+ *
+ * The queue can be bounded, see {@link Overflow} for what happens to work
+ * added while it is full.
+ *
+ * Work of {@link Priority#INTERACTIVE} groups runs ahead of the other work,
+ * see {@link #INTERACTIVE_BURST} for how the other work still gets its turn.
+ *
  * @see <a href="http://www.ibm.com/developerworks/library/j-jtp0730/index.html">Java
  *      Theory and Practice: Thread Pools and Work Queues</a>
  */
 public class WorkQueue {
 
+	/**
+	 * How the work requests are handed to the threads
+	 */
+	public enum Mode {
+		/** One queue shared by all the workers, guarded by its monitor. */
+		SHARED,
+		/**
+		 * A deque per worker: work added by a worker stays on its own deque,
+		 * and idle workers steal the newest work of the others.
+		 */
+		STEALING,
+		/**
+		 * Delegate to a {@link ForkJoinPool} in first in first out mode, which
+		 * also steals work. Its workers only take work added from outside once
+		 * their own work runs out, so not suited to work that keeps adding
+		 * more work, like a crawl.
+		 */
+		FORK_JOIN
+	}
+
+	/**
+	 * What happens to work added while a bounded queue is full
+	 */
+	public enum Overflow {
+		/**
+		 * The caller waits for a free slot. Work added by the workers
+		 * themselves runs on the calling worker instead, since all the
+		 * workers waiting would never free a slot.
+		 */
+		BLOCK,
+		/** The caller runs the work itself. */
+		CALLER_RUNS
+	}
+
+	/**
+	 * Priority class of the work of a group
+	 */
+	public enum Priority {
+		/**
+		 * Work someone is waiting for, like a search. Runs ahead of bulk work
+		 * and is never held back by the capacity of a bounded queue.
+		 */
+		INTERACTIVE,
+		/** Everything else, like crawling or building an index. */
+		BULK
+	}
+
 	/**
 	 * Pool of worker threads that will wait in the background until work is
 	 * available.
 	 */
 	private final PoolWorker[] workers;
 
-	/** Queue of pending work requests. */
+	/** Queue of pending work requests, in shared mode. */
 	private final LinkedList<Runnable> queue;
 
+	/** Queue of pending interactive work requests, in every mode. */
+	private final ConcurrentLinkedQueue<Runnable> urgent;
+
+	/** Deque of pending work requests of every worker, in stealing mode. */
+	private final List<ConcurrentLinkedDeque<Runnable>> deques;
+
+	/** Workers about to park because they found no work, in stealing mode. */
+	private final ConcurrentLinkedQueue<PoolWorker> sleepers;
+
+	/** Number of awake workers looking for work, in stealing mode. */
+	private final AtomicInteger scanning;
+
+	/** Deque receiving the next work request added outside of the workers. */
+	private final AtomicInteger nextDeque;
+
+	/** Pool running the work requests, in fork join mode. */
+	private final ForkJoinPool pool;
+
+	/** Runs the blocking work requests, null to run them on the workers. */
+	private final ExecutorService blocking;
+
+	/** Free slots of a bounded queue, null if unbounded. */
+	private final Semaphore slots;
+
+	/** What happens to work added while the queue is full. */
+	private final Overflow overflow;
+
+	/** The maximum number of threads running blocking work, without virtual threads. */
+	public static final int MAX_BLOCKING = 256;
+
+	private final Mode mode;
+
 	/** Used to signal the queue should be shutdown. */
 	private volatile boolean shutdown;
 
 	/** The default number of threads to use when not specified. */
 	public static final int DEFAULT = 5;
 
-	private int pending;
-	
+	/**
+	 * The maximum number of interactive work requests a worker runs in a row
+	 * while bulk work is waiting, so a steady stream of searches cannot
+	 * starve a crawl.
+	 */
+	public static final int INTERACTIVE_BURST = 8;
+
+	private final AtomicInteger pending;
+
+	/** Group of the work request running on the current thread, if any. */
+	private final ThreadLocal<TaskGroup> running;
+
 	private static final Logger log = LogManager.getLogger();
 
 	/**
@@ -42,49 +163,359 @@ public class WorkQueue {
 	}
 
 	/**
-	 * Starts a work queue with the specified number of threads.
+	 * Starts a work queue with the specified number of threads, sharing one queue.
 	 *
 	 * @param threads number of worker threads; should be greater than 1
 	 */
 	public WorkQueue(int threads) {
-		this.queue = new LinkedList<Runnable>();
-		this.workers = new PoolWorker[threads];
-		this.pending = 0;
+		this(threads, Mode.SHARED);
+	}
+
+	/**
+	 * Starts a work queue with the specified number of threads and way to
+	 * dispatch the work.
+	 *
+	 * @param threads number of worker threads; should be greater than 1
+	 * @param mode how the work requests are handed to the threads
+	 */
+	public WorkQueue(int threads, Mode mode) {
+		this(threads, mode, false);
+	}
+
+	/**
+	 * Starts a work queue with the specified number of threads and way to
+	 * dispatch the work, and optionally a separate executor for blocking work.
+	 *
+	 * @param threads number of worker threads; should be greater than 1
+	 * @param mode how the work requests are handed to the threads
+	 * @param virtual true to run blocking work on virtual threads, or on up to
+	 *        {@link #MAX_BLOCKING} threads if the runtime has no virtual threads
+	 *
+	 * @see #executeBlocking(Runnable)
+	 */
+	public WorkQueue(int threads, Mode mode, boolean virtual) {
+		this(threads, mode, virtual, 0, Overflow.BLOCK);
+	}
+
+	/**
+	 * Starts a work queue holding at most the given number of work requests
+	 * that have not started yet.
+	 *
+	 * @param threads number of worker threads; should be greater than 1
+	 * @param mode how the work requests are handed to the threads
+	 * @param virtual true to run blocking work on virtual threads
+	 * @param capacity maximum number of waiting work requests, 0 for no limit
+	 * @param overflow what happens to work added while the queue is full
+	 *
+	 * @see #WorkQueue(int, Mode, boolean)
+	 */
+	public WorkQueue(int threads, Mode mode, boolean virtual, int capacity, Overflow overflow) {
+		this.mode = mode;
+		this.slots = capacity > 0 ? new Semaphore(capacity) : null;
+		this.overflow = overflow;
+		this.blocking = virtual ? newBlockingExecutor() : null;
+		this.pending = new AtomicInteger();
+		this.running = new ThreadLocal<TaskGroup>();
 		this.shutdown = false;
+		this.queue = mode == Mode.SHARED ? new LinkedList<Runnable>() : null;
+		this.urgent = new ConcurrentLinkedQueue<Runnable>();
+		this.deques = mode == Mode.STEALING ? new ArrayList<ConcurrentLinkedDeque<Runnable>>(threads) : null;
+		this.sleepers = mode == Mode.STEALING ? new ConcurrentLinkedQueue<PoolWorker>() : null;
+		this.scanning = new AtomicInteger();
+		this.nextDeque = new AtomicInteger();
+		this.pool = mode == Mode.FORK_JOIN ? new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true) : null;
+		this.workers = new PoolWorker[mode == Mode.FORK_JOIN ? 0 : threads];
+
+		if(deques != null) {
+			for(int i = 0; i < threads; i++) {
+				deques.add(new ConcurrentLinkedDeque<Runnable>());
+			}
+		}
 
 		// start the threads so they are waiting in the background
-		for (int i = 0; i < threads; i++) {
-			this.workers[i] = new PoolWorker();
+		for (int i = 0; i < workers.length; i++) {
+			this.workers[i] = new PoolWorker(i);
 			this.workers[i].start();
 		}
 	}
 
+	/**
+	 * Returns how the work requests are handed to the threads.
+	 *
+	 * @return dispatch mode of the queue
+	 */
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Creates a group of bulk work to add work to this queue and wait for only that work.
+	 *
+	 * @return a new empty group
+	 */
+	public TaskGroup newGroup() {
+		return newGroup(Priority.BULK);
+	}
+
+	/**
+	 * Creates a group to add work of the given priority to this queue and
+	 * wait for only that work.
+	 *
+	 * @param priority priority class of the work of the group
+	 * @return a new empty group
+	 */
+	public TaskGroup newGroup(Priority priority) {
+		return new TaskGroup(priority);
+	}
+
 	/**
 	 * Adds a work request to the queue. A thread will process this request when
-	 * available.
+	 * available. When called from the work of a group, the request joins that group.
 	 *
 	 * @param r work request (in the form of a {@link Runnable} object)
 	 */
 	public void execute(Runnable r) {
-		synchronized (queue) {
-			pending++;
-			queue.addLast(r);
-			queue.notifyAll();
+		TaskGroup group = running.get();
+		if(group == null) {
+			submit(r, Priority.BULK);
+		} else {
+			submit(group.wrap(r), group.priority);
 		}
 	}
-	
+
+	/**
+	 * Adds a work request that mostly waits, like network or disk access.
+	 * Without a blocking executor it is the same as {@link #execute(Runnable)}.
+	 * When called from the work of a group, the request joins that group.
+	 *
+	 * @param r work request
+	 */
+	public void executeBlocking(Runnable r) {
+		TaskGroup group = running.get();
+		if(group == null) {
+			submitBlocking(r, Priority.BULK);
+		} else {
+			submitBlocking(group.wrap(r), group.priority);
+		}
+	}
+
+	/**
+	 * Adds a blocking work request, already wrapped for its group if any.
+	 *
+	 * @param task work request
+	 * @param priority priority class of the request, when run by the workers
+	 */
+	private void submitBlocking(Runnable task, Priority priority) {
+		if(blocking == null) {
+			submit(task, priority);
+			return;
+		}
+		Runnable r = admit(task);
+		if(r == null) {
+			return;
+		}
+		pending.incrementAndGet();
+		blocking.execute(() -> {
+			if(!shutdown) {
+				runTask(r);
+			}
+		});
+	}
+
+	/**
+	 * Create the executor for blocking work: a thread per task on virtual
+	 * threads when the runtime has them, otherwise a pool of up to
+	 * {@link #MAX_BLOCKING} daemon threads that end when idle.
+	 *
+	 * @return executor for blocking work
+	 */
+	private static ExecutorService newBlockingExecutor() {
+		try {
+			// looked up at run time, virtual threads need Java 21
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			log.info("Virtual threads not available, running blocking work on up to {} threads.", MAX_BLOCKING);
+		}
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_BLOCKING, MAX_BLOCKING, 30, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), r -> {
+					Thread thread = new Thread(r, "blocking-worker");
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Adds a work request, already wrapped for its group if any, to the queue.
+	 *
+	 * @param task work request
+	 * @param priority priority class of the request
+	 */
+	private void submit(Runnable task, Priority priority) {
+		if(priority == Priority.INTERACTIVE) {
+			submitUrgent(task);
+			return;
+		}
+		Runnable r = admit(task);
+		if(r == null) {
+			return;
+		}
+		pending.incrementAndGet();
+		switch(mode) {
+		case STEALING:
+			Thread current = Thread.currentThread();
+			if(current instanceof PoolWorker && ((PoolWorker) current).getQueue() == this) {
+				deques.get(((PoolWorker) current).id).addLast(r);
+			} else {
+				deques.get(Math.floorMod(nextDeque.getAndIncrement(), deques.size())).addLast(r);
+			}
+			// a worker still looking for work is bound to find it
+			if(scanning.get() == 0) {
+				wakeSleeper();
+			}
+			break;
+		case FORK_JOIN:
+			// the pool has no priorities, so bulk work first runs an interactive request if one waits
+			pool.execute(() -> {
+				runUrgent();
+				if(!shutdown) {
+					runTask(r);
+				}
+			});
+			break;
+		default:
+			synchronized (queue) {
+				queue.addLast(r);
+				queue.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Adds an interactive work request, ahead of the bulk work.
+	 *
+	 * @param r work request
+	 */
+	private void submitUrgent(Runnable r) {
+		pending.incrementAndGet();
+		switch(mode) {
+		case STEALING:
+			urgent.add(r);
+			if(scanning.get() == 0) {
+				wakeSleeper();
+			}
+			break;
+		case FORK_JOIN:
+			urgent.add(r);
+			pool.execute(this::runUrgent);
+			break;
+		default:
+			synchronized (queue) {
+				urgent.add(r);
+				queue.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Run the oldest waiting interactive work request, if any, in fork join mode
+	 */
+	private void runUrgent() {
+		Runnable r = urgent.poll();
+		if(r != null && !shutdown) {
+			runTask(r);
+		}
+	}
+
+	/**
+	 * Take a free slot of a bounded queue for a work request, waiting for one
+	 * or running the request on the calling thread if the queue is full
+	 *
+	 * @param r work request
+	 * @return the work request to queue, freeing its slot when it starts, or
+	 *         null if it already ran on the calling thread
+	 */
+	private Runnable admit(Runnable r) {
+		if(slots == null) {
+			return r;
+		}
+		if(!slots.tryAcquire()) {
+			if(overflow == Overflow.CALLER_RUNS || isWorker()) {
+				pending.incrementAndGet();
+				runTask(r);
+				return null;
+			}
+			try {
+				while(!slots.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+					if(shutdown) {
+						return r;
+					}
+				}
+			} catch(InterruptedException e) {
+				log.warn("Warning: interrupted while waiting for a free slot, running the work instead.", e);
+				Thread.currentThread().interrupt();
+				pending.incrementAndGet();
+				runTask(r);
+				return null;
+			}
+		}
+		Runnable queued = r;
+		return () -> {
+			slots.release();
+			queued.run();
+		};
+	}
+
+	/**
+	 * Return true if the calling thread is one of the workers of this queue
+	 *
+	 * @return true if called from a worker
+	 */
+	private boolean isWorker() {
+		Thread current = Thread.currentThread();
+		if(current instanceof PoolWorker) {
+			return ((PoolWorker) current).getQueue() == this;
+		}
+		return pool != null && ForkJoinTask.getPool() == pool;
+	}
+
+	/**
+	 * Unpark one of the workers waiting for work, if any
+	 */
+	private void wakeSleeper() {
+		PoolWorker sleeper = sleepers.poll();
+		if(sleeper != null) {
+			LockSupport.unpark(sleeper);
+		}
+	}
+
+	/**
+	 * Run a work request and count it as finished
+	 * @param r work request
+	 */
+	private void runTask(Runnable r) {
+		try {
+			r.run();
+		}
+		catch (RuntimeException ex) {
+			// catch runtime exceptions to avoid leaking threads
+			log.warn("Warning: Work queue encountered an exception while running.", ex);
+		}
+		decrementPending();
+	}
+
 	/**
 	 * Decrement pending variable
 	 */
 	private void decrementPending() {
-		synchronized(this) {
-			pending--;
-			if(pending == 0) {
-				queue.notifyAll();
+		if(pending.decrementAndGet() == 0) {
+			synchronized(this) {
+				this.notifyAll();
 			}
 		}
 	}
-	
+
 	/**
 	 * Waits for all pending work to be finished.
 	 */
@@ -92,9 +523,9 @@ public class WorkQueue {
 
 		synchronized(this) {
 			try {
-				while(pending > 0) {
-					queue.wait();
-				} 
+				while(pending.get() > 0) {
+					this.wait();
+				}
 			} catch(InterruptedException e) {
 				System.err.println("interrunpted exception catched!");
 			}
@@ -109,8 +540,23 @@ public class WorkQueue {
 		// safe to do unsynchronized due to volatile keyword
 		shutdown = true;
 
-		synchronized (queue) {
-			queue.notifyAll();
+		if(blocking != null) {
+			blocking.shutdown();
+		}
+
+		switch(mode) {
+		case STEALING:
+			for(PoolWorker worker: workers) {
+				LockSupport.unpark(worker);
+			}
+			break;
+		case FORK_JOIN:
+			pool.shutdown();
+			break;
+		default:
+			synchronized (queue) {
+				queue.notifyAll();
+			}
 		}
 	}
 
@@ -120,7 +566,89 @@ public class WorkQueue {
 	 * @return number of worker threads
 	 */
 	public int size() {
-		return workers.length;
+		return pool != null ? pool.getParallelism() : workers.length;
+	}
+
+	/**
+	 * Work added to the queue by one caller. {@link #finish()} waits for the
+	 * work of this group only, other work of the queue keeps running.
+	 */
+	public class TaskGroup {
+
+		private final AtomicInteger pending;
+		private final Priority priority;
+
+		private TaskGroup(Priority priority) {
+			this.pending = new AtomicInteger();
+			this.priority = priority;
+		}
+
+		/**
+		 * Return the priority class of the work of this group
+		 * @return priority of the group
+		 */
+		public Priority getPriority() {
+			return priority;
+		}
+
+		/**
+		 * Adds a work request of this group to the queue.
+		 *
+		 * @param r work request
+		 */
+		public void execute(Runnable r) {
+			submit(wrap(r), priority);
+		}
+
+		/**
+		 * Adds a blocking work request of this group.
+		 *
+		 * @param r work request
+		 *
+		 * @see WorkQueue#executeBlocking(Runnable)
+		 */
+		public void executeBlocking(Runnable r) {
+			submitBlocking(wrap(r), priority);
+		}
+
+		/**
+		 * Waits for all pending work of this group to be finished.
+		 */
+		public void finish() {
+			synchronized(this) {
+				try {
+					while(pending.get() > 0) {
+						this.wait();
+					}
+				} catch(InterruptedException e) {
+					System.err.println("interrunpted exception catched!");
+				}
+			}
+		}
+
+		/**
+		 * Count a work request in this group, and make the work it adds
+		 * while running join the group too
+		 * @param r work request
+		 * @return the work request to queue
+		 */
+		private Runnable wrap(Runnable r) {
+			pending.incrementAndGet();
+			return () -> {
+				TaskGroup outer = running.get();
+				running.set(this);
+				try {
+					r.run();
+				} finally {
+					running.set(outer);
+					if(pending.decrementAndGet() == 0) {
+						synchronized(this) {
+							this.notifyAll();
+						}
+					}
+				}
+			};
+		}
 	}
 
 	/**
@@ -131,13 +659,41 @@ public class WorkQueue {
 	 */
 	private class PoolWorker extends Thread {
 
+		//index of the own deque in stealing mode
+		private final int id;
+		//interactive work requests run in a row while bulk work may be waiting
+		private int burst;
+
+		public PoolWorker(int id) {
+			this.id = id;
+		}
+
+		/**
+		 * Return the work queue of this worker
+		 * @return the work queue
+		 */
+		public WorkQueue getQueue() {
+			return WorkQueue.this;
+		}
+
 		@Override
 		public void run() {
+			if(deques != null) {
+				runStealing();
+			} else {
+				runShared();
+			}
+		}
+
+		/**
+		 * Take the work from the shared queue, waiting on its monitor when empty
+		 */
+		private void runShared() {
 			Runnable r = null;
 
 			while (true) {
 				synchronized (queue) {
-					while (queue.isEmpty() && !shutdown) {
+					while (queue.isEmpty() && urgent.isEmpty() && !shutdown) {
 						try {
 							queue.wait();
 						}
@@ -153,20 +709,98 @@ public class WorkQueue {
 					if (shutdown) {
 						break;
 					}
+					else if (!urgent.isEmpty() && (burst < INTERACTIVE_BURST || queue.isEmpty())) {
+						r = urgent.poll();
+						burst++;
+					}
 					else {
 						r = queue.removeFirst();
+						burst = 0;
+					}
+				}
+				runTask(r);
+			}
+		}
 
+		/**
+		 * Take the oldest work of the own deque, or steal the newest work of
+		 * another worker. Own work runs in order, so work that keeps adding
+		 * more work, like a crawl, cannot starve the work queued before it.
+		 *
+		 * A worker finding no work registers as a sleeper and stops counting
+		 * as scanning before looking once more and parking, so work added
+		 * meanwhile either is found by that last look or sees no scanning
+		 * worker and unparks a sleeper.
+		 */
+		private void runStealing() {
+			scanning.incrementAndGet();
+			while (!shutdown) {
+				Runnable r = findWork();
+				if (r == null) {
+					sleepers.add(this);
+					scanning.decrementAndGet();
+					r = findWork();
+					if (r == null) {
+						if (!shutdown) {
+							LockSupport.park(this);
+						}
+						if (Thread.interrupted()) {
+							log.warn("Warning: Work queue interrupted.");
+						}
+						sleepers.remove(this);
+						scanning.incrementAndGet();
+						continue;
 					}
+					sleepers.remove(this);
+				} else {
+					scanning.decrementAndGet();
 				}
-				try {
-					r.run();
+				// more work than this worker can take, and nobody else looking for it
+				if (scanning.get() == 0 && hasWork()) {
+					wakeSleeper();
 				}
-				catch (RuntimeException ex) {
-					// catch runtime exceptions to avoid leaking threads
-					log.warn("Warning: Work queue encountered an exception while running.", ex);
+				runTask(r);
+				scanning.incrementAndGet();
+			}
+		}
+
+		/**
+		 * Return the next work request of this worker, interactive work first
+		 * unless this worker already ran {@link #INTERACTIVE_BURST} of them in a row
+		 * @return the work request, null if there is no work
+		 */
+		private Runnable findWork() {
+			Runnable r = burst < INTERACTIVE_BURST ? urgent.poll() : null;
+			if (r != null) {
+				burst++;
+				return r;
+			}
+			r = deques.get(id).pollFirst();
+			for (int i = 1; r == null && i < deques.size(); i++) {
+				r = deques.get((id + i) % deques.size()).pollLast();
+			}
+			if (r != null) {
+				burst = 0;
+				return r;
+			}
+			// no bulk work waiting, nothing to hold the interactive work back for
+			return urgent.poll();
+		}
+
+		/**
+		 * Return true if any deque has work
+		 * @return true if some work is waiting
+		 */
+		private boolean hasWork() {
+			if (!urgent.isEmpty()) {
+				return true;
+			}
+			for (ConcurrentLinkedDeque<Runnable> deque: deques) {
+				if (!deque.isEmpty()) {
+					return true;
 				}
-				decrementPending();
 			}
+			return false;
 		}
 	}
 }
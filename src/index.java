@@ -9,8 +9,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-
 /**
  * Index page for the search engin
  * @author Hao Shen
@@ -19,15 +17,13 @@ import opennlp.tools.stemmer.snowball.SnowballStemmer;
 @SuppressWarnings("serial")
 public class index extends HttpServlet {
 
-	private final ThreadSafeInvertedIndex index;
+	private final InvertedIndexInterface index;
 	private final WorkQueue worker;
-	private final LinkedHashMap<String, ArrayList<OneResult>> searchResult;
 
-	public index(ThreadSafeInvertedIndex threadSafe, WorkQueue worker) {
+	public index(InvertedIndexInterface index, WorkQueue worker) {
 		super();
-		this.index = threadSafe;
+		this.index = index;
 		this.worker = worker;
-		this.searchResult = new LinkedHashMap<String, ArrayList<OneResult>>();
 	}
 
 	/**
@@ -98,7 +94,7 @@ public class index extends HttpServlet {
 
 		boolean exact = request.getParameter("searchMode") == "partial" ? false : true;
 		String[] queries = query.split(" ");
-		search(queries, exact);
+		LinkedHashMap<String, ArrayList<OneResult>> searchResult = search(queries, exact);
 		HttpSession session = request.getSession();
 		@SuppressWarnings("unchecked")
 		ArrayList<LinkedHashMap<String, ArrayList<OneResult>>> result = (ArrayList<LinkedHashMap<String, ArrayList<OneResult>>>) session.getAttribute("result");
@@ -123,15 +119,23 @@ public class index extends HttpServlet {
 	}
 
 	/**
-	 * Perform a search use multi threading
+	 * Perform a search use multi threading. All the words are searched on the
+	 * same snapshot of the index, so pages added meanwhile by a crawl never
+	 * block the search nor show up for only some of the words.
 	 * @param query query word array
 	 * @param partial partial or exact search
+	 * @return results of every stemmed query word
 	 */
-	private void search(String[] query, boolean partial) {
+	private LinkedHashMap<String, ArrayList<OneResult>> search(String[] query, boolean partial) {
+		InvertedIndexInterface snapshot = index.snapshot();
+		LinkedHashMap<String, ArrayList<OneResult>> searchResult = new LinkedHashMap<String, ArrayList<OneResult>>();
+		//wait for the words of this request only, which run ahead of a crawl
+		WorkQueue.TaskGroup group = worker.newGroup(WorkQueue.Priority.INTERACTIVE);
 		for(String oneQuery: query) {
-			worker.execute(new SearchTask(oneQuery, partial));
+			group.execute(new SearchTask(snapshot, searchResult, oneQuery, partial));
 		}
-		worker.finish();
+		group.finish();
+		return searchResult;
 	}
 
 	/**
@@ -141,18 +145,21 @@ public class index extends HttpServlet {
 	 */
 	private class SearchTask implements Runnable {
 
+		private final InvertedIndexInterface snapshot;
+		private final LinkedHashMap<String, ArrayList<OneResult>> searchResult;
 		private final String oneQuery;
 		private final boolean exact;
 
-		public SearchTask(String oneQuery, boolean exact) {
+		public SearchTask(InvertedIndexInterface snapshot, LinkedHashMap<String, ArrayList<OneResult>> searchResult, String oneQuery, boolean exact) {
+			this.snapshot = snapshot;
+			this.searchResult = searchResult;
 			this.oneQuery = oneQuery;
 			this.exact = exact;
 		}
 
 		@Override
 		public void run() {
-			var stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
-			String word = stemmer.stem(oneQuery).toString();
+			String word = StemCache.getShared().stem(oneQuery);
 
 			if(!word.trim().isEmpty()) {
 				synchronized(searchResult) {
@@ -163,9 +170,9 @@ public class index extends HttpServlet {
 
 				ArrayList<OneResult> result;
 				if(exact) {
-					result = index.exactSearch(word);
+					result = snapshot.exactSearch(word);
 				} else {
-					result = index.partialSearch(word);
+					result = snapshot.partialSearch(word);
 				}
 				synchronized(searchResult) {
 					searchResult.put(word, result);
@@ -0,0 +1,71 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * WorkQueueTest class
+ * 	regression tests of {@link WorkQueue#finish()}, which used to wait on the
+ * 	queue monitor without holding it and failed every threaded run
+ * @author Hao Shen
+ *
+ */
+public class WorkQueueTest {
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+	/**
+	 * Finish returns once all the work ran
+	 */
+	@Test
+	public void testFinishWaitsForWork() {
+		assertTimeoutPreemptively(TIMEOUT, () -> {
+			WorkQueue worker = new WorkQueue(4);
+			AtomicInteger done = new AtomicInteger();
+			for(int i = 0; i < 1000; i++) {
+				worker.execute(() -> {
+					Thread.yield();
+					done.incrementAndGet();
+				});
+			}
+			worker.finish();
+			assertEquals(1000, done.get());
+			worker.shutdown();
+		});
+	}
+
+	/**
+	 * Finish returns right away when there is no work
+	 */
+	@Test
+	public void testFinishWithoutWork() {
+		assertTimeoutPreemptively(TIMEOUT, () -> {
+			WorkQueue worker = new WorkQueue(2);
+			worker.finish();
+			worker.shutdown();
+		});
+	}
+
+	/**
+	 * Work added by the workers themselves is waited for too, and the queue
+	 * can be finished again after more work is added
+	 */
+	@Test
+	public void testFinishRepeatedWithNestedWork() {
+		assertTimeoutPreemptively(TIMEOUT, () -> {
+			WorkQueue worker = new WorkQueue(3);
+			AtomicInteger done = new AtomicInteger();
+			for(int round = 1; round <= 20; round++) {
+				for(int i = 0; i < 10; i++) {
+					worker.execute(() -> worker.execute(done::incrementAndGet));
+				}
+				worker.finish();
+				assertEquals(round * 10, done.get());
+			}
+			worker.shutdown();
+		});
+	}
+}